@@ -1,11 +1,15 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /* Extra Credit Only */
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Lookups take constant time:
+ *  characters drawn from a small range are found in a table indexed by
+ *  character, and others in a hash table.
  *  @author Kushal Singh
  */
 class Alphabet {
@@ -13,32 +17,116 @@ class Alphabet {
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _chars = chars;
+        if (chars.isEmpty()) {
+            throw error("empty alphabet");
+        }
+        _chars = chars.toCharArray();
+        char min = Character.MAX_VALUE, max = Character.MIN_VALUE;
+        for (char c : _chars) {
+            min = (char) Math.min(min, c);
+            max = (char) Math.max(max, c);
+        }
+        _min = min;
+        if (max - min < Math.max(MAX_DENSE, 4 * _chars.length)) {
+            _dense = new int[max - min + 1];
+            Arrays.fill(_dense, -1);
+            for (int k = 0; k < _chars.length; k += 1) {
+                if (_dense[_chars[k] - min] >= 0) {
+                    throw error("character %c repeated in alphabet",
+                                _chars[k]);
+                }
+                _dense[_chars[k] - min] = k;
+            }
+            _keys = null;
+            _slots = null;
+        } else {
+            int capacity = Integer.highestOneBit(4 * _chars.length - 1);
+            _dense = null;
+            _keys = new char[capacity];
+            _slots = new int[capacity];
+            Arrays.fill(_slots, -1);
+            for (int k = 0; k < _chars.length; k += 1) {
+                int h = hash(_chars[k]);
+                while (_slots[h] >= 0) {
+                    if (_keys[h] == _chars[k]) {
+                        throw error("character %c repeated in alphabet",
+                                    _chars[k]);
+                    }
+                    h = (h + 1) & (capacity - 1);
+                }
+                _keys[h] = _chars[k];
+                _slots[h] = k;
+            }
+        }
     }
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _chars.length;
     }
 
     /** Returns true if C is in this alphabet. */
     boolean contains(char c) {
-        return (_chars.indexOf(c) != -1);
+        return index(c) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return _chars.charAt(index);
+        return _chars[index];
     }
 
     /** Returns the index of character C, which must be in the alphabet. */
     int toInt(char c) {
-        return _chars.indexOf(c);
+        int k = index(c);
+        if (k < 0) {
+            throw error("character %c not in alphabet", c);
+        }
+        return k;
+    }
+
+    /** Returns the index of character C, or -1 if it is not in the
+     *  alphabet. */
+    private int index(char c) {
+        if (_dense != null) {
+            int d = c - _min;
+            return d >= 0 && d < _dense.length ? _dense[d] : -1;
+        }
+        for (int h = hash(c); _slots[h] >= 0;
+             h = (h + 1) & (_slots.length - 1)) {
+            if (_keys[h] == c) {
+                return _slots[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the home slot of C in _keys. */
+    private int hash(char c) {
+        return (c * 0x9E3779B1) >>> (32 - Integer.numberOfTrailingZeros(
+            _keys.length));
     }
 
-    /** String of _chars used to construct alphabet. */
-    private String _chars;
+    /** Alphabets whose characters span fewer than this many code points
+     *  (or fewer than 4 times their size) use a dense table. */
+    private static final int MAX_DENSE = 1024;
+
+    /** Characters of the alphabet, in order. */
+    private final char[] _chars;
+
+    /** Least character in _chars. */
+    private final char _min;
+
+    /** If not null, _dense[c - _min] is the index of character C, or -1
+     *  if C is not in the alphabet. */
+    private final int[] _dense;
+
+    /** If _dense is null, a hash table with linear probing in which each
+     *  character of _chars, _keys[h], has index _slots[h].  Unused slots
+     *  have _slots[h] == -1. */
+    private final char[] _keys;
 
+    /** Indices corresponding to _keys. */
+    private final int[] _slots;
 
 }
@@ -0,0 +1,467 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Timings of the main operations of the enigma package, for comparing
+ *  one version with another.  For each configuration given, inputs are
+ *  generated at random from its alphabet and rotors, and each operation
+ *  is repeated in timed rounds after some untimed warm-up rounds.  The
+ *  results (nanoseconds per operation, and characters or other units per
+ *  second) are printed as CSV or JSON.
+ *  @author Kushal Singh
+ */
+public final class Benchmark {
+
+    /** Time operations as described by ARGS, which are
+     *      [ OPTIONS ] [ CONFIG ... ]
+     *  where each CONFIG names a configuration file (text or compiled).
+     *  With none, every .conf file in testing/correct is used.  OPTIONS
+     *  are
+     *    --rounds=N      Time N rounds (default 5) of each operation.
+     *    --warmup=N      Run N untimed rounds first (default 3).
+     *    --millis=N      Make each round last about N milliseconds
+     *                    (default 200).
+     *    --only=NAME     Time only operations whose names start with NAME.
+     *    --format=F      Print results as csv (the default) or json.
+     *    --output=FILE   Print results to FILE instead of the standard
+     *                    output.
+     *    --seed=N        Generate inputs with random seed N (default 0). */
+    public static void main(String... args) {
+        try {
+            int k;
+            Benchmark bench = new Benchmark();
+            String format = "csv";
+            File output = null;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--rounds=")) {
+                    bench._rounds = (int) CribSearch.number(arg);
+                } else if (arg.startsWith("--warmup=")) {
+                    bench._warmup = (int) CribSearch.number(arg);
+                } else if (arg.startsWith("--millis=")) {
+                    bench._millis = CribSearch.number(arg);
+                } else if (arg.startsWith("--only=")) {
+                    bench._only = value;
+                } else if (arg.startsWith("--format=")) {
+                    format = value;
+                } else if (arg.startsWith("--output=")) {
+                    output = new File(value);
+                } else if (arg.startsWith("--seed=")) {
+                    bench._seed = CribSearch.number(arg);
+                } else {
+                    throw error("unknown option: %s", arg);
+                }
+            }
+            if (!format.equals("csv") && !format.equals("json")) {
+                throw error("--format must be csv or json");
+            }
+            if (bench._rounds < 1 || bench._warmup < 0 || bench._millis < 1) {
+                throw error("bad --rounds, --warmup or --millis");
+            }
+            List<File> configs = new ArrayList<>();
+            for (; k < args.length; k += 1) {
+                configs.add(new File(args[k]));
+            }
+            if (configs.isEmpty()) {
+                configs = defaultConfigs();
+            }
+
+            for (File config : configs) {
+                bench.run(config);
+            }
+            PrintStream out = System.out;
+            if (output != null) {
+                try {
+                    out = new PrintStream(output, "UTF-8");
+                } catch (IOException excp) {
+                    throw error("could not open %s", output);
+                }
+            }
+            if (format.equals("csv")) {
+                bench.printCsv(out);
+            } else {
+                bench.printJson(out);
+            }
+            out.flush();
+            if (output != null) {
+                out.close();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the configuration files in testing/correct. */
+    private static List<File> defaultConfigs() {
+        File[] files = new File("testing", "correct")
+            .listFiles((dir, name) -> name.endsWith(".conf"));
+        if (files == null || files.length == 0) {
+            throw error("no configurations given, and none in "
+                        + "testing/correct");
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /** An operation to be timed. */
+    interface Operation {
+        /** Perform the operation REPS times, returning a value that
+         *  depends on the results (so that they are not optimized
+         *  away). */
+        long run(long reps);
+    }
+
+    /** Time each operation on inputs generated from the configuration in
+     *  FILE, adding the results to _results. */
+    void run(File file) {
+        MachineConfig config = ConfigParser.load(file);
+        Alphabet alpha = config.alphabet();
+        int size = alpha.size();
+        String name = file.getName();
+        Random random = new Random(_seed);
+
+        Permutation perm = config.rotors().get(0).permutation();
+        time(name, "Permutation.permute", "", 1, reps -> {
+            long sum = 0;
+            for (long r = 0, p = 0; r < reps; r += 1) {
+                p = perm.permute((int) p + 1);
+                sum += p;
+            }
+            return sum;
+        });
+        time(name, "Permutation.invert", "", 1, reps -> {
+            long sum = 0;
+            for (long r = 0, c = 0; r < reps; r += 1) {
+                c = perm.invert((int) c + 1);
+                sum += c;
+            }
+            return sum;
+        });
+
+        Rotor moving = null;
+        for (Rotor r : config.rotors()) {
+            if (r.rotates()) {
+                moving = r;
+                break;
+            }
+        }
+        if (moving != null) {
+            final Rotor rotor = moving;
+            time(name, "MovingRotor.convertForward", "", 1, reps -> {
+                long sum = 0;
+                for (long r = 0; r < reps; r += 1) {
+                    rotor.set((int) (r % size));
+                    sum += rotor.convertForward((int) (sum % size));
+                }
+                return sum;
+            });
+            time(name, "MovingRotor.convertBackward", "", 1, reps -> {
+                long sum = 0;
+                for (long r = 0; r < reps; r += 1) {
+                    rotor.set((int) (r % size));
+                    sum += rotor.convertBackward((int) (sum % size));
+                }
+                return sum;
+            });
+            rotor.set(0);
+        }
+
+        List<String[]> orders = config.rotorOrders();
+        if (orders.isEmpty()) {
+            return;
+        }
+        Machine machine = new Machine(config);
+        machine.insertRotors(orders.get(0));
+        machine.setPlugboard(new Permutation("", alpha));
+        time(name, "Machine.convert(int)", "", 1, reps -> {
+            long sum = 0;
+            for (long r = 0; r < reps; r += 1) {
+                sum += machine.convert((int) (sum % size));
+            }
+            return sum;
+        });
+        char[] symbols = messageSymbols(alpha);
+        for (int len : MESSAGE_SIZES) {
+            if (symbols.length == 0) {
+                break;
+            }
+            String msg = message(symbols, len, random);
+            time(name, "Machine.convert(String)", Integer.toString(len), len,
+                 reps -> {
+                     long sum = 0;
+                     for (long r = 0; r < reps; r += 1) {
+                         sum += machine.convert(msg).charAt(len - 1);
+                     }
+                     return sum;
+                 });
+        }
+
+        if (symbols.length > 0 && !(alpha instanceof ByteAlphabet)) {
+            timeMain(file, config, orders, symbols, random);
+        }
+    }
+
+    /** Time Main converting a generated input of MAIN_MESSAGES messages
+     *  for the configuration CONFIG in FILE, with rotor orders from
+     *  ORDERS and message characters from SYMBOLS, chosen by RANDOM. */
+    private void timeMain(File file, MachineConfig config,
+                          List<String[]> orders, char[] symbols,
+                          Random random) {
+        Alphabet alpha = config.alphabet();
+        StringBuilder text = new StringBuilder();
+        long chars = 0;
+        for (int m = 0; m < MAIN_MESSAGES; m += 1) {
+            String[] order = orders.get(random.nextInt(orders.size()));
+            text.append("* ").append(String.join(" ", order)).append(' ');
+            for (int i = 1; i < order.length; i += 1) {
+                text.append(alpha.toChar(random.nextInt(alpha.size())));
+            }
+            if (alpha.size() >= 2) {
+                text.append(" (").append(alpha.toChar(0))
+                    .append(alpha.toChar(1)).append(')');
+            }
+            text.append('\n');
+            for (int line = 0; line < MAIN_LINES; line += 1) {
+                text.append(message(symbols, MAIN_LINE_LENGTH, random))
+                    .append('\n');
+                chars += MAIN_LINE_LENGTH;
+            }
+        }
+        File input, output;
+        try {
+            input = File.createTempFile("enigma-bench", ".in");
+            output = File.createTempFile("enigma-bench", ".out");
+            input.deleteOnExit();
+            output.deleteOnExit();
+            Files.write(input.toPath(),
+                        text.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("could not write benchmark input");
+        }
+        String[] args = { file.getPath(), input.getPath(), output.getPath() };
+        time(file.getName(), "Main", MAIN_MESSAGES + "x" + MAIN_LINES, chars,
+             reps -> {
+                 for (long r = 0; r < reps; r += 1) {
+                     Main.main(args);
+                 }
+                 return output.length();
+             });
+    }
+
+    /** Return the characters of ALPHA that may appear in a generated
+     *  message: all but blanks and '*'. */
+    private static char[] messageSymbols(Alphabet alpha) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < alpha.size(); k += 1) {
+            char c = alpha.toChar(k);
+            if (!Character.isWhitespace(c) && c != '*') {
+                result.append(c);
+            }
+        }
+        return result.toString().toCharArray();
+    }
+
+    /** Return a message of LEN characters chosen from SYMBOLS by
+     *  RANDOM. */
+    private static String message(char[] symbols, int len, Random random) {
+        char[] result = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = symbols[random.nextInt(symbols.length)];
+        }
+        return new String(result);
+    }
+
+    /** Time OP, called BENCHMARK with parameter PARAM, on configuration
+     *  CONFIG, where each repetition handles UNITS characters (or other
+     *  units), unless excluded by --only. */
+    private void time(String config, String benchmark, String param,
+                      long units, Operation op) {
+        if (_only != null && !benchmark.startsWith(_only)) {
+            return;
+        }
+        long target = _millis * 1_000_000L;
+        long reps = 1;
+        while (true) {
+            long start = System.nanoTime();
+            _sink += op.run(reps);
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= target / 4) {
+                reps = Math.max(1, (long) ((double) reps * target / elapsed));
+                break;
+            }
+            reps *= 2;
+        }
+        for (int i = 0; i < _warmup; i += 1) {
+            _sink += op.run(reps);
+        }
+        double[] nanos = new double[_rounds];
+        for (int i = 0; i < _rounds; i += 1) {
+            long start = System.nanoTime();
+            _sink += op.run(reps);
+            nanos[i] = (double) (System.nanoTime() - start) / reps;
+        }
+        _results.add(new Result(config, benchmark, param, units, reps,
+                                nanos));
+        System.err.printf("%s %s %s: %.1f ns/op%n", config, benchmark,
+                          param, _results.get(_results.size() - 1).mean());
+    }
+
+    /** Print my results on OUT as CSV, with a header line. */
+    void printCsv(PrintStream out) {
+        out.println("config,benchmark,param,units,reps,rounds,"
+                    + "ns_per_op_mean,ns_per_op_stddev,ns_per_op_min,"
+                    + "units_per_second");
+        for (Result r : _results) {
+            out.printf("%s,%s,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.1f%n",
+                       r._config, r._benchmark, r._param, r._units, r._reps,
+                       r._nanos.length, r.mean(), r.stddev(), r.min(),
+                       r.rate());
+        }
+    }
+
+    /** Print my results on OUT as a JSON object, along with the Java
+     *  version and the time of the run. */
+    void printJson(PrintStream out) {
+        out.printf("{%n  \"java\": \"%s\",%n  \"timestamp\": %d,%n"
+                   + "  \"results\": [", System.getProperty("java.version"),
+                   System.currentTimeMillis());
+        for (int i = 0; i < _results.size(); i += 1) {
+            Result r = _results.get(i);
+            out.printf("%s%n    {\"config\": \"%s\", \"benchmark\": \"%s\", "
+                       + "\"param\": \"%s\", \"units\": %d, \"reps\": %d, "
+                       + "\"rounds\": %d, \"ns_per_op_mean\": %.3f, "
+                       + "\"ns_per_op_stddev\": %.3f, "
+                       + "\"ns_per_op_min\": %.3f, "
+                       + "\"units_per_second\": %.1f}",
+                       i == 0 ? "" : ",", r._config, r._benchmark, r._param,
+                       r._units, r._reps, r._nanos.length, r.mean(),
+                       r.stddev(), r.min(), r.rate());
+        }
+        out.printf("%n  ]%n}%n");
+    }
+
+    /** The timings of one operation. */
+    private static final class Result {
+
+        /** Timings NANOS (per repetition, one per round) of BENCHMARK with
+         *  parameter PARAM on configuration CONFIG, where each repetition
+         *  handles UNITS units and each round made REPS repetitions. */
+        Result(String config, String benchmark, String param, long units,
+               long reps, double[] nanos) {
+            _config = config;
+            _benchmark = benchmark;
+            _param = param;
+            _units = units;
+            _reps = reps;
+            _nanos = nanos;
+        }
+
+        /** Return the mean time per repetition. */
+        double mean() {
+            double sum = 0;
+            for (double t : _nanos) {
+                sum += t;
+            }
+            return sum / _nanos.length;
+        }
+
+        /** Return the sample standard deviation of the time per
+         *  repetition. */
+        double stddev() {
+            if (_nanos.length < 2) {
+                return 0;
+            }
+            double mean = mean(), sum = 0;
+            for (double t : _nanos) {
+                sum += (t - mean) * (t - mean);
+            }
+            return Math.sqrt(sum / (_nanos.length - 1));
+        }
+
+        /** Return the least time per repetition. */
+        double min() {
+            double min = Double.POSITIVE_INFINITY;
+            for (double t : _nanos) {
+                min = Math.min(min, t);
+            }
+            return min;
+        }
+
+        /** Return the number of units handled per second, at the mean
+         *  time per repetition. */
+        double rate() {
+            return _units * 1e9 / mean();
+        }
+
+        /** Configuration file name. */
+        private final String _config;
+
+        /** Name of the operation. */
+        private final String _benchmark;
+
+        /** Parameter of the operation (such as message size), or "". */
+        private final String _param;
+
+        /** Units handled per repetition. */
+        private final long _units;
+
+        /** Repetitions per round. */
+        private final long _reps;
+
+        /** Nanoseconds per repetition in each round. */
+        private final double[] _nanos;
+
+    }
+
+    /** Sizes of the messages converted by Machine.convert(String). */
+    private static final int[] MESSAGE_SIZES = { 16, 1024, 65536 };
+
+    /** Number of messages in the input converted by Main. */
+    private static final int MAIN_MESSAGES = 200;
+
+    /** Number of lines in each message converted by Main. */
+    private static final int MAIN_LINES = 5;
+
+    /** Length of each message line converted by Main. */
+    private static final int MAIN_LINE_LENGTH = 60;
+
+    /** Number of timed rounds. */
+    private int _rounds = 5;
+
+    /** Number of untimed rounds. */
+    private int _warmup = 3;
+
+    /** Approximate length of each round, in milliseconds. */
+    private long _millis = 200;
+
+    /** Prefix of the names of the operations to time, or null for
+     *  all. */
+    private String _only;
+
+    /** Seed for generating inputs. */
+    private long _seed;
+
+    /** Timings so far. */
+    private final List<Result> _results = new ArrayList<>();
+
+    /** Accumulates the values returned by operations, so that their work
+     *  is not optimized away. */
+    private long _sink;
+
+}
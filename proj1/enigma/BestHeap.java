@@ -0,0 +1,141 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The best-scoring few of the candidates offered during a search, shared
+ *  by the threads of the search.  A candidate is a rotor order number and
+ *  a starting position number, as for a SettingSearch.  The candidates
+ *  kept are held in a min-heap in primitive arrays, so that offering a
+ *  candidate allocates nothing, and a candidate scoring no better than
+ *  the worst kept is usually turned away without locking.
+ *  @author Kushal Singh
+ */
+class BestHeap {
+
+    /** A heap keeping the best CAPACITY candidates offered. */
+    BestHeap(int capacity) {
+        if (capacity < 1) {
+            throw error("must keep at least one candidate");
+        }
+        _scores = new double[capacity];
+        _orders = new int[capacity];
+        _positions = new long[capacity];
+        _floor = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Offer the candidate with rotor order number ORDER and starting
+     *  position number POSITION, whose score is SCORE (higher is
+     *  better).  May be called from several threads at once. */
+    void offer(double score, int order, long position) {
+        if (score <= _floor) {
+            return;
+        }
+        synchronized (this) {
+            if (_size < _scores.length) {
+                _size += 1;
+                siftUp(_size - 1, score, order, position);
+                if (_size == _scores.length) {
+                    _floor = _scores[0];
+                }
+            } else if (score > _scores[0]) {
+                siftDown(0, score, order, position);
+                _floor = _scores[0];
+            }
+        }
+    }
+
+    /** Return the number of candidates I hold. */
+    synchronized int size() {
+        return _size;
+    }
+
+    /** Arrange the candidates I hold from best to worst, so that score(K),
+     *  order(K) and position(K) describe the (K+1)th best.  No more
+     *  candidates may be offered afterwards. */
+    synchronized void sort() {
+        _floor = Double.POSITIVE_INFINITY;
+        for (int n = _size - 1; n > 0; n -= 1) {
+            double score = _scores[n];
+            int order = _orders[n];
+            long position = _positions[n];
+            set(n, _scores[0], _orders[0], _positions[0]);
+            int saved = _size;
+            _size = n;
+            siftDown(0, score, order, position);
+            _size = saved;
+        }
+    }
+
+    /** Return the score of my Kth candidate. */
+    synchronized double score(int k) {
+        return _scores[k];
+    }
+
+    /** Return the rotor order number of my Kth candidate. */
+    synchronized int order(int k) {
+        return _orders[k];
+    }
+
+    /** Return the starting position number of my Kth candidate. */
+    synchronized long position(int k) {
+        return _positions[k];
+    }
+
+    /** Place the candidate (SCORE, ORDER, POSITION) at or above heap
+     *  index K, moving worse-scoring parents down. */
+    private void siftUp(int k, double score, int order, long position) {
+        while (k > 0) {
+            int parent = (k - 1) / 2;
+            if (_scores[parent] <= score) {
+                break;
+            }
+            set(k, _scores[parent], _orders[parent], _positions[parent]);
+            k = parent;
+        }
+        set(k, score, order, position);
+    }
+
+    /** Place the candidate (SCORE, ORDER, POSITION) at or below heap
+     *  index K, moving better-scoring children up. */
+    private void siftDown(int k, double score, int order, long position) {
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= _size) {
+                break;
+            }
+            if (child + 1 < _size && _scores[child + 1] < _scores[child]) {
+                child += 1;
+            }
+            if (score <= _scores[child]) {
+                break;
+            }
+            set(k, _scores[child], _orders[child], _positions[child]);
+            k = child;
+        }
+        set(k, score, order, position);
+    }
+
+    /** Store the candidate (SCORE, ORDER, POSITION) at heap index K. */
+    private void set(int k, double score, int order, long position) {
+        _scores[k] = score;
+        _orders[k] = order;
+        _positions[k] = position;
+    }
+
+    /** Scores of the candidates held, a min-heap in _scores[0 .. _size-1]
+     *  (before sorting). */
+    private final double[] _scores;
+
+    /** Rotor order numbers of the candidates held. */
+    private final int[] _orders;
+
+    /** Starting position numbers of the candidates held. */
+    private final long[] _positions;
+
+    /** Number of candidates held. */
+    private int _size;
+
+    /** Scores no higher than this cannot enter the heap. */
+    private volatile double _floor;
+
+}
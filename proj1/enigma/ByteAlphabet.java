@@ -0,0 +1,86 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The alphabet of all 256 byte values, in which character K is (char) K.
+ *  In configuration files and setting lines it is written "00-FF", and
+ *  its symbols as pairs of hexadecimal digits.
+ *  @author Kushal Singh
+ */
+class ByteAlphabet extends Alphabet {
+
+    /** The size of my alphabet. */
+    static final int SIZE = 256;
+
+    /** How this alphabet is written in configuration files. */
+    static final String NAME = "00-FF";
+
+    /** A new alphabet containing the 256 byte values in order. */
+    ByteAlphabet() {
+        super(allBytes());
+    }
+
+    /** Return the characters 0 through 255, in order. */
+    private static String allBytes() {
+        char[] chars = new char[SIZE];
+        for (int k = 0; k < SIZE; k += 1) {
+            chars[k] = (char) k;
+        }
+        return new String(chars);
+    }
+
+    /** Returns the size of the alphabet. */
+    @Override
+    final int size() {
+        return SIZE;
+    }
+
+    /** Returns true if C is in this alphabet. */
+    @Override
+    final boolean contains(char c) {
+        return c < SIZE;
+    }
+
+    /** Returns character number INDEX in the alphabet, where
+     *  0 <= INDEX < size(). */
+    @Override
+    final char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("character index out of range");
+        }
+        return (char) index;
+    }
+
+    /** Returns the index of character C, which must be in the alphabet. */
+    @Override
+    final int toInt(char c) {
+        if (c >= SIZE) {
+            throw error("character not in alphabet");
+        }
+        return c;
+    }
+
+    /** Return the symbols written in HEX as pairs of hexadecimal
+     *  digits, as a string of the corresponding characters. */
+    static String fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("odd number of hex digits in %s", hex);
+        }
+        char[] chars = new char[hex.length() / 2];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = (char) (16 * hexDigit(hex.charAt(2 * i))
+                               + hexDigit(hex.charAt(2 * i + 1)));
+        }
+        return new String(chars);
+    }
+
+    /** Return the value of the hexadecimal digit C. */
+    static int hexDigit(char c) {
+        int d = Character.digit(c, 16);
+        if (d < 0) {
+            throw error("bad hex digit: %c", c);
+        }
+        return d;
+    }
+
+}
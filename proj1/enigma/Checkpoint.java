@@ -0,0 +1,147 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** How far a batch conversion had got: enough to resume it without
+ *  converting again what was already written.  A checkpoint file is a
+ *  few lines of text:
+ *      enigma-checkpoint 1
+ *      input OFFSET        Bytes of input consumed.
+ *      output OFFSET       Bytes of output written.
+ *      position N          Keystrokes since the setting line.
+ *      rotors PACKED       Rotor settings, as by MachineState.pack.
+ *      setting LINE        The setting line in effect.
+ *  Files are replaced atomically, so that a run stopped at any moment
+ *  leaves either the old checkpoint or the new one.
+ *  @author Kushal Singh
+ */
+class Checkpoint {
+
+    /** First line of a checkpoint file. */
+    static final String HEADER = "enigma-checkpoint 1";
+
+    /** A checkpoint at byte INPUT of the input and byte OUTPUT of the
+     *  output, with M set up by setting line SETTING and then advanced to
+     *  its current rotor positions. */
+    Checkpoint(long input, long output, String setting, Machine M) {
+        _input = input;
+        _output = output;
+        _setting = setting;
+        _position = M.position();
+        _rotors = M.state().pack(M.config().alphabet().size());
+    }
+
+    /** A checkpoint with the given INPUT and OUTPUT offsets, SETTING,
+     *  POSITION and packed ROTORS. */
+    private Checkpoint(long input, long output, String setting,
+                       long position, long rotors) {
+        _input = input;
+        _output = output;
+        _setting = setting;
+        _position = position;
+        _rotors = rotors;
+    }
+
+    /** Return the checkpoint in FILE. */
+    static Checkpoint read(File file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(),
+                                       StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        if (lines.size() != 6 || !lines.get(0).equals(HEADER)) {
+            throw error("%s is not a checkpoint", file);
+        }
+        return new Checkpoint(number(lines.get(1), "input", file),
+                              number(lines.get(2), "output", file),
+                              field(lines.get(5), "setting", file),
+                              number(lines.get(3), "position", file),
+                              number(lines.get(4), "rotors", file));
+    }
+
+    /** Return the value of LINE of checkpoint FILE, which must be
+     *  "KEY VALUE". */
+    private static String field(String line, String key, File file) {
+        if (!line.startsWith(key + " ")) {
+            throw error("%s: missing %s", file, key);
+        }
+        return line.substring(key.length() + 1);
+    }
+
+    /** Return the value of LINE of checkpoint FILE, which must be "KEY N"
+     *  for a non-negative number N. */
+    private static long number(String line, String key, File file) {
+        try {
+            long value = Long.parseLong(field(line, key, file));
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("%s: bad %s", file, key);
+    }
+
+    /** Write me to FILE, replacing it. */
+    void write(File file) {
+        String text = String.format("%s%ninput %d%noutput %d%nposition %d%n"
+                                    + "rotors %d%nsetting %s%n",
+                                    HEADER, _input, _output, _position,
+                                    _rotors, _setting);
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(temp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the number of bytes of input consumed. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the number of bytes of output written. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the setting line in effect. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Move the rotors of M, already set up by my setting line, to where
+     *  they were when I was taken. */
+    void restore(Machine M) {
+        M.state().unpack(_rotors, M.config().alphabet().size());
+        M.state().setPosition(_position);
+    }
+
+    /** Offsets in the input and output. */
+    private final long _input, _output;
+
+    /** The setting line in effect. */
+    private final String _setting;
+
+    /** Keystrokes since the setting line. */
+    private final long _position;
+
+    /** Packed rotor settings. */
+    private final long _rotors;
+
+}
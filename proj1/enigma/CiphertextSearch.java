@@ -0,0 +1,531 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack.  Every rotor order and starting position of
+ *  a configuration is tried with an empty plugboard, and the decryptions
+ *  scoring highest by index of coincidence are kept.  For each of those,
+ *  plugboard pairs are then found by hill climbing: pairs are connected,
+ *  disconnected, or exchanged one change at a time for as long as that
+ *  improves the score of the decryption, first by index of coincidence
+ *  and then, if a plaintext sample is given, by n-gram statistics.
+ *  Candidates are decrypted into buffers allocated once per piece of
+ *  work, so that trying a candidate allocates nothing.
+ *  @author Kushal Singh
+ */
+public final class CiphertextSearch implements SettingSearch {
+
+    /** Number of starting positions decrypted in lockstep. */
+    static final int LANES = 64;
+
+    /** Search for settings as described by ARGS, which are
+     *      [ OPTIONS ] CONFIG CIPHERTEXT
+     *  where CONFIG names a configuration file (text or compiled), and
+     *  CIPHERTEXT is a string (blanks are ignored, and letters are folded
+     *  to upper case if only that is in the alphabet).  The best settings
+     *  found are printed as setting lines, each followed by its score and
+     *  the start of its decryption.  OPTIONS are
+     *    --keep=K        Keep the best K (default 100) rotor settings for
+     *                    plugboard hill climbing.
+     *    --pairs=N       Connect at most N (default 10) plugboard pairs.
+     *    --ngrams=FILE   Score by the N-grams of the plaintext in FILE
+     *                    after index of coincidence stops improving.
+     *    --n=N           Use N-grams (default 3) for --ngrams.
+     *    --show=N        Print the best N (default 5) settings.
+     *    --threads=N     Search on N threads (default: one per available
+     *                    processor).
+     *  Statistics are printed on the standard error. */
+    public static void main(String... args) {
+        try {
+            int k;
+            int keep = 100, pairs = 10, n = 3, show = 5;
+            File ngrams = null;
+            int threads = Runtime.getRuntime().availableProcessors();
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                if (arg.startsWith("--keep=")) {
+                    keep = (int) CribSearch.number(arg);
+                } else if (arg.startsWith("--pairs=")) {
+                    pairs = (int) CribSearch.number(arg);
+                } else if (arg.startsWith("--ngrams=")) {
+                    ngrams = new File(arg.substring(arg.indexOf('=') + 1));
+                } else if (arg.startsWith("--n=")) {
+                    n = (int) CribSearch.number(arg);
+                } else if (arg.startsWith("--show=")) {
+                    show = (int) CribSearch.number(arg);
+                } else if (arg.startsWith("--threads=")) {
+                    threads = (int) CribSearch.number(arg);
+                } else {
+                    throw error("unknown option: %s", arg);
+                }
+            }
+            if (args.length - k != 2) {
+                throw error("usage: CiphertextSearch [ OPTIONS ] CONFIG "
+                            + "CIPHERTEXT");
+            }
+            if (threads < 1) {
+                throw error("--threads needs at least 1 thread");
+            }
+
+            MachineConfig config = ConfigParser.load(new File(args[k]));
+            Alphabet alpha = config.alphabet();
+            NgramScorer scorer =
+                ngrams == null ? null
+                : new NgramScorer(alpha, n, sample(ngrams, alpha));
+            CiphertextSearch search =
+                new CiphertextSearch(config, CribSearch.indices(args[k + 1],
+                                                                alpha),
+                                     keep, pairs, scorer);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            List<Result> found;
+            long start = System.nanoTime();
+            double rotorSecs;
+            try {
+                search.searchRotors(pool);
+                rotorSecs = (System.nanoTime() - start) * 1e-9;
+                found = search.searchPlugboards(pool);
+            } finally {
+                pool.shutdown();
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            for (int i = 0; i < show && i < found.size(); i += 1) {
+                Result r = found.get(i);
+                System.out.printf("%s%n  %.4f %s%n", r.setting(), r.score(),
+                                  r.preview(60));
+            }
+            System.err.printf("%d candidates in %.2f s (%.0f per second); "
+                              + "%d plugboard trials, %.2f s in all%n",
+                              search.candidates(), rotorSecs,
+                              search.candidates() / rotorSecs,
+                              search.trials(), secs);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the indices in ALPHA of the characters of the plaintext
+     *  sample in FILE, folding case as for Main and skipping characters
+     *  that are not in ALPHA. */
+    static int[] sample(File file, Alphabet alpha) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file.toPath()),
+                              StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!alpha.contains(c)) {
+                c = Character.toUpperCase(c);
+            }
+            if (alpha.contains(c)) {
+                result[n] = alpha.toInt(c);
+                n += 1;
+            }
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** A search of all rotor orders allowed by CONFIG, all starting
+     *  positions, and plugboards of at most PAIRS pairs, for those that
+     *  best decrypt CIPHER (indices in CONFIG's alphabet).  The best KEEP
+     *  rotor settings are kept for plugboard hill climbing.  SCORER, if
+     *  not null, gives the n-gram statistics of plaintext. */
+    CiphertextSearch(MachineConfig config, int[] cipher, int keep, int pairs,
+                     NgramScorer scorer) {
+        if (cipher.length < 2) {
+            throw error("ciphertext too short");
+        }
+        if (pairs < 0) {
+            throw error("--pairs cannot be negative");
+        }
+        _alphabet = config.alphabet();
+        _cipher = cipher.clone();
+        _pairs = Math.min(pairs, _alphabet.size() / 2);
+        _scorer = scorer;
+        _best = new BestHeap(keep);
+
+        Permutation empty = new Permutation("", _alphabet);
+        List<String[]> orders = config.rotorOrders();
+        _orders = orders.toArray(new String[orders.size()][]);
+        _machines = new Machine[_orders.length];
+        for (int i = 0; i < _orders.length; i += 1) {
+            _machines[i] = new Machine(config);
+            _machines[i].insertRotors(_orders[i]);
+            _machines[i].setPlugboard(empty);
+        }
+
+        long positions = 1;
+        for (int i = 1; i < config.numRotors(); i += 1) {
+            if (positions > Long.MAX_VALUE / _alphabet.size()) {
+                throw error("too many starting positions to search");
+            }
+            positions *= _alphabet.size();
+        }
+        _positions = positions;
+    }
+
+    /** Try every rotor order and starting position on the threads of
+     *  POOL, keeping the best. */
+    void searchRotors(ForkJoinPool pool) {
+        pool.invoke(new SearchTask(this, 0, _orders.length, 0, _positions));
+        _best.sort();
+    }
+
+    /** Return the results of hill climbing the plugboard of each rotor
+     *  setting kept by searchRotors, on the threads of POOL, best
+     *  first. */
+    List<Result> searchPlugboards(ForkJoinPool pool) {
+        ArrayList<Callable<Result>> climbs = new ArrayList<>();
+        for (int i = 0; i < _best.size(); i += 1) {
+            final int order = _best.order(i);
+            final long position = _best.position(i);
+            climbs.add(() -> climb(order, position));
+        }
+        ArrayList<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> f : pool.invokeAll(climbs)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("search interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("search failed: %s", excp.getCause());
+        }
+        results.sort((r1, r2) -> Double.compare(r2.score(), r1.score()));
+        return results;
+    }
+
+    /** Return the number of rotor orders I try. */
+    int orders() {
+        return _orders.length;
+    }
+
+    /** Return the number of rotor settings tried so far. */
+    long candidates() {
+        return _candidates.sum();
+    }
+
+    /** Return the number of plugboards tried so far. */
+    long trials() {
+        return _trials.sum();
+    }
+
+    /** Try starting positions FROM .. TO-1 with rotor order number ORDER
+     *  and no plugboard, offering each decryption's index of coincidence
+     *  to the heap of best settings.  Up to LANES consecutive starting
+     *  positions are decrypted in lockstep by a MachineBatch. */
+    @Override
+    public void check(int order, long from, long to) {
+        MachineBatch batch = _machines[order].batch(LANES);
+        int slots = _orders[order].length;
+        int size = _alphabet.size();
+        int len = _cipher.length;
+        int[] out = new int[LANES];
+        int[] counts = new int[size * LANES];
+        for (long p0 = from; p0 < to; p0 += LANES) {
+            int n = (int) Math.min(LANES, to - p0);
+            for (int l = 0; l < LANES; l += 1) {
+                long q = p0 + Math.min(l, n - 1);
+                for (int i = slots - 1; i >= 1; i -= 1) {
+                    batch.setSetting(l, i, (int) (q % size));
+                    q /= size;
+                }
+            }
+            Arrays.fill(counts, 0);
+            for (int k = 0; k < len; k += 1) {
+                batch.convert(_cipher[k], out);
+                for (int l = 0; l < LANES; l += 1) {
+                    counts[out[l] * LANES + l] += 1;
+                }
+            }
+            for (int l = 0; l < n; l += 1) {
+                long pairs = 0;
+                for (int c = l; c < counts.length; c += LANES) {
+                    pairs += (long) counts[c] * (counts[c] - 1);
+                }
+                _best.offer((double) pairs * size / ((long) len * (len - 1)),
+                            order, p0 + l);
+            }
+        }
+        _candidates.add(to - from);
+    }
+
+    /** Return the best plugboard found by hill climbing for rotor order
+     *  number ORDER at starting position number POSITION. */
+    Result climb(int order, long position) {
+        int size = _alphabet.size();
+        Machine m = _machines[order].copy();
+        int[] settings = m.state().settings();
+        long q = position;
+        for (int i = settings.length - 1; i >= 1; i -= 1) {
+            settings[i] = (int) (q % size);
+            q /= size;
+        }
+        int[] rotors = new int[_cipher.length * size];
+        m.keystream(_cipher.length, rotors);
+
+        Climber climber = new Climber(rotors);
+        climber.climb(false);
+        if (_scorer != null) {
+            climber.climb(true);
+        }
+        _trials.add(climber._trials);
+        return new Result(CribSearch.describe(_orders[order], position,
+                                              _alphabet),
+                          climber._plugboard, climber._score,
+                          climber._plain, _alphabet);
+    }
+
+    /** The state of one plugboard hill climb. */
+    private class Climber {
+
+        /** A climber for the decryption of my ciphertext by the rotor
+         *  permutations ROTORS, as filled by Machine.keystream, starting
+         *  from an empty plugboard. */
+        Climber(int[] rotors) {
+            int size = _alphabet.size();
+            _rotors = rotors;
+            _plugboard = new int[size];
+            for (int c = 0; c < size; c += 1) {
+                _plugboard[c] = c;
+            }
+            _plain = new int[_cipher.length];
+            _counts = new int[size];
+        }
+
+        /** Change my plugboard one pair at a time for as long as that
+         *  improves my score, by n-grams if NGRAMS, or else by index of
+         *  coincidence.  Each pass tries, for every two characters A and
+         *  B, connecting them, disconnecting them, or connecting them and
+         *  their former partners to each other.  Afterwards, _plain holds
+         *  the decryption with my plugboard. */
+        void climb(boolean ngrams) {
+            int size = _alphabet.size();
+            int[] p = _plugboard;
+            _score = score(ngrams);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < size; a += 1) {
+                    for (int b = a + 1; b < size; b += 1) {
+                        int x = p[a], y = p[b];
+                        if (x == b) {
+                            disconnect(a, b);
+                            if (!keep(ngrams)) {
+                                connect(a, b);
+                            } else {
+                                improved = true;
+                            }
+                            continue;
+                        }
+                        int used = _used;
+                        if (x != a) {
+                            disconnect(a, x);
+                        }
+                        if (y != b) {
+                            disconnect(b, y);
+                        }
+                        connect(a, b);
+                        if (x != a && y != b) {
+                            connect(x, y);
+                        }
+                        if (_used <= _pairs && keep(ngrams)) {
+                            improved = true;
+                            continue;
+                        }
+                        if (x != a && y != b) {
+                            disconnect(x, y);
+                        }
+                        disconnect(a, b);
+                        if (y != b) {
+                            connect(b, y);
+                        }
+                        if (x != a) {
+                            connect(a, x);
+                        }
+                        assert _used == used;
+                    }
+                }
+            }
+            score(ngrams);
+        }
+
+        /** Return true iff my plugboard now scores better than _score (by
+         *  n-grams if NGRAMS), recording the new score if so. */
+        private boolean keep(boolean ngrams) {
+            double score = score(ngrams);
+            if (score > _score) {
+                _score = score;
+                return true;
+            }
+            return false;
+        }
+
+        /** Return the score of my decryption with my current plugboard,
+         *  by n-grams if NGRAMS, or else by index of coincidence. */
+        private double score(boolean ngrams) {
+            int size = _alphabet.size();
+            int[] p = _plugboard;
+            for (int k = 0, base = 0; k < _plain.length; k += 1,
+                     base += size) {
+                _plain[k] = p[_rotors[base + p[_cipher[k]]]];
+            }
+            _trials += 1;
+            if (ngrams) {
+                return _scorer.score(_plain, _plain.length);
+            }
+            return NgramScorer.coincidence(_plain, _plain.length, size,
+                                           _counts);
+        }
+
+        /** Connect unconnected characters A and B. */
+        private void connect(int a, int b) {
+            _plugboard[a] = b;
+            _plugboard[b] = a;
+            _used += 1;
+        }
+
+        /** Disconnect characters A and B, which are connected. */
+        private void disconnect(int a, int b) {
+            _plugboard[a] = a;
+            _plugboard[b] = b;
+            _used -= 1;
+        }
+
+        /** Rotor permutations for each character of the ciphertext. */
+        private final int[] _rotors;
+
+        /** The plugboard, as a table. */
+        private final int[] _plugboard;
+
+        /** Number of pairs connected in _plugboard. */
+        private int _used;
+
+        /** The decryption with the plugboard last scored. */
+        private final int[] _plain;
+
+        /** Scratch space for counting characters. */
+        private final int[] _counts;
+
+        /** Score of the current plugboard. */
+        private double _score;
+
+        /** Number of plugboards scored. */
+        private long _trials;
+
+    }
+
+    /** A setting found by the search, with its score and decryption. */
+    static final class Result {
+
+        /** A result for the setting line SETTING (without plugboard),
+         *  plugboard PLUGBOARD (as a table of indices in ALPHA), with
+         *  score SCORE and decryption PLAIN. */
+        Result(String setting, int[] plugboard, double score, int[] plain,
+               Alphabet alpha) {
+            StringBuilder line = new StringBuilder(setting);
+            for (int c = 0; c < plugboard.length; c += 1) {
+                if (plugboard[c] > c) {
+                    line.append(" (").append(alpha.toChar(c))
+                        .append(alpha.toChar(plugboard[c])).append(')');
+                }
+            }
+            _setting = line.toString();
+            _score = score;
+            char[] text = new char[plain.length];
+            for (int i = 0; i < plain.length; i += 1) {
+                text[i] = alpha.toChar(plain[i]);
+            }
+            _plain = new String(text);
+        }
+
+        /** Return my setting line, with plugboard. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my decryption. */
+        String plain() {
+            return _plain;
+        }
+
+        /** Return at most the first N characters of my decryption. */
+        String preview(int n) {
+            return _plain.length() <= n ? _plain : _plain.substring(0, n);
+        }
+
+        /** My setting line. */
+        private final String _setting;
+
+        /** My score. */
+        private final double _score;
+
+        /** My decryption. */
+        private final String _plain;
+
+    }
+
+    /** The alphabet of the configuration searched. */
+    private final Alphabet _alphabet;
+
+    /** The ciphertext. */
+    private final int[] _cipher;
+
+    /** Largest number of plugboard pairs to connect. */
+    private final int _pairs;
+
+    /** Plaintext n-gram statistics, or null. */
+    private final NgramScorer _scorer;
+
+    /** The best rotor settings found. */
+    private final BestHeap _best;
+
+    /** The rotor orders to try, by name. */
+    private final String[][] _orders;
+
+    /** Machines with the rotors of _orders inserted and an empty
+     *  plugboard, shared by all the threads searching. */
+    private final Machine[] _machines;
+
+    /** Number of starting positions of each order. */
+    private final long _positions;
+
+    /** Number of rotor settings tried. */
+    private final LongAdder _candidates = new LongAdder();
+
+    /** Number of plugboards tried. */
+    private final LongAdder _trials = new LongAdder();
+
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Reading and writing machine configurations in compiled form: a
+ *  binary file holding the alphabet and each rotor's permutation table,
+ *  so that loading one is a single mapping of the file with no parsing.
+ *  The file consists of big-endian values:
+ *      int     MAGIC
+ *      char    alphabet kind: 'B' for the byte alphabet 00-FF, 'A' for
+ *              any other
+ *      int     alphabet size S, then S chars of the alphabet
+ *      int     number of rotor slots
+ *      int     number of pawls
+ *      int     number of rotors, then for each rotor:
+ *        char    type: 'M', 'N', or 'R'
+ *        int     length L of name, then L chars of name
+ *        int     number of notches N, then N chars of notches
+ *        S chars   permutation table: entry K is the index K maps to
+ *  @author Kushal Singh
+ */
+class CompiledConfig {
+
+    /** First four bytes of a compiled configuration file ("ENG2"). */
+    static final int MAGIC = 0x454e4732;
+
+    /** Return true iff FILE holds a compiled configuration. */
+    static boolean isCompiled(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            while (head.hasRemaining() && in.read(head) >= 0) {
+                continue;
+            }
+            return !head.hasRemaining() && head.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the configuration compiled into FILE. */
+    static MachineConfig read(File file) {
+        ByteBuffer buf;
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        try {
+            if (buf.getInt() != MAGIC) {
+                throw error("%s is not a compiled configuration", file);
+            }
+            char kind = buf.getChar();
+            String chars = string(buf);
+            Alphabet alpha;
+            if (kind == 'B') {
+                alpha = new ByteAlphabet();
+                for (int k = 0; k < chars.length(); k += 1) {
+                    if (chars.charAt(k) != k) {
+                        throw error("%s is damaged", file);
+                    }
+                }
+                if (chars.length() != alpha.size()) {
+                    throw error("%s is damaged", file);
+                }
+            } else if (kind == 'A') {
+                alpha = new Alphabet(chars);
+            } else {
+                throw error("bad alphabet kind in %s", file);
+            }
+            int size = alpha.size();
+            int numRotors = buf.getInt();
+            int numPawls = buf.getInt();
+            int count = buf.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (int r = 0; r < count; r += 1) {
+                char type = buf.getChar();
+                String name = string(buf);
+                String notches = string(buf);
+                int[] table = new int[size];
+                for (int k = 0; k < size; k += 1) {
+                    table[k] = buf.getChar();
+                }
+                Permutation perm = new Permutation(table, alpha);
+                if (type == 'M') {
+                    rotors.add(new MovingRotor(name, perm, notches));
+                } else if (type == 'N') {
+                    rotors.add(new FixedRotor(name, perm));
+                } else if (type == 'R') {
+                    rotors.add(new Reflector(name, perm));
+                } else {
+                    throw error("bad rotor type in %s", file);
+                }
+            }
+            return new MachineConfig(alpha, numRotors, numPawls, rotors);
+        } catch (RuntimeException excp) {
+            if (excp instanceof EnigmaException) {
+                throw excp;
+            }
+            throw error("%s is damaged", file);
+        }
+    }
+
+    /** Write CONFIG to FILE in compiled form. */
+    static void write(MachineConfig config, File file) {
+        Alphabet alpha = config.alphabet();
+        int size = alpha.size();
+        List<Rotor> rotors = config.rotors();
+        int bytes = 22 + 2 * size;
+        for (Rotor rotor : rotors) {
+            bytes += 10 + 2 * (rotor.name().length() + notches(rotor).length()
+                               + size);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(bytes);
+        buf.putInt(MAGIC);
+        buf.putChar(alpha instanceof ByteAlphabet ? 'B' : 'A');
+        buf.putInt(size);
+        for (int k = 0; k < size; k += 1) {
+            buf.putChar(alpha.toChar(k));
+        }
+        buf.putInt(config.numRotors());
+        buf.putInt(config.numPawls());
+        buf.putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            buf.putChar(rotor.reflecting() ? 'R' : rotor.rotates() ? 'M' : 'N');
+            putString(buf, rotor.name());
+            putString(buf, notches(rotor));
+            Permutation perm = rotor.permutation();
+            for (int k = 0; k < size; k += 1) {
+                buf.putChar((char) perm.permute(k));
+            }
+        }
+        buf.flip();
+
+        try (FileChannel out =
+             FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the notches of ROTOR, or "" if it does not move. */
+    private static String notches(Rotor rotor) {
+        if (rotor instanceof MovingRotor) {
+            return ((MovingRotor) rotor).notches();
+        }
+        return "";
+    }
+
+    /** Append the length and characters of S to BUF. */
+    private static void putString(ByteBuffer buf, String s) {
+        buf.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            buf.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return the string whose length and characters are next in BUF. */
+    private static String string(ByteBuffer buf) {
+        int len = buf.getInt();
+        CharBuffer chars = buf.asCharBuffer();
+        chars.limit(len);
+        buf.position(buf.position() + 2 * len);
+        return chars.toString();
+    }
+
+}
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A bounded cache of permutation tables keyed by long values, which
+ *  discards its least recently used entry when full.  Entries live in
+ *  parallel arrays linked into hash chains and a recency list, so that
+ *  once the cache is full neither lookups nor insertions allocate.
+ *  @author Kushal Singh
+ */
+class CompositeCache {
+
+    /** A cache of at most CAPACITY > 0 tables of length SIZE. */
+    CompositeCache(int capacity, int size) {
+        _size = size;
+        _keys = new long[capacity];
+        _tables = new int[capacity][];
+        _chain = new int[capacity];
+        _newer = new int[capacity];
+        _older = new int[capacity];
+        int buckets = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        _buckets = new int[buckets];
+        clear();
+    }
+
+    /** Return the maximum number of entries I hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Return the number of entries I hold. */
+    int count() {
+        return _count;
+    }
+
+    /** Return the table cached for KEY, marking it most recently used,
+     *  or null if there is none. */
+    int[] get(long key) {
+        for (int e = _buckets[bucket(key)]; e != NONE; e = _chain[e]) {
+            if (_keys[e] == key) {
+                _hits += 1;
+                if (e != _newest) {
+                    unlink(e);
+                    linkNewest(e);
+                }
+                return _tables[e];
+            }
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Add an entry for KEY, which must not already be present, evicting
+     *  the least recently used entry if I am full, and return its table
+     *  for the caller to fill in. */
+    int[] put(long key) {
+        int e;
+        if (_count < _keys.length) {
+            e = _count;
+            _count += 1;
+            if (_tables[e] == null) {
+                _tables[e] = new int[_size];
+            }
+        } else {
+            e = _oldest;
+            unlink(e);
+            removeFromChain(e);
+        }
+        _keys[e] = key;
+        int b = bucket(key);
+        _chain[e] = _buckets[b];
+        _buckets[b] = e;
+        linkNewest(e);
+        return _tables[e];
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_buckets, NONE);
+        _count = 0;
+        _newest = _oldest = NONE;
+    }
+
+    /** Return the number of successful lookups so far. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of failed lookups so far. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the hash bucket for KEY. */
+    private int bucket(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (_buckets.length - 1);
+    }
+
+    /** Remove entry E from its hash chain. */
+    private void removeFromChain(int e) {
+        int b = bucket(_keys[e]);
+        if (_buckets[b] == e) {
+            _buckets[b] = _chain[e];
+            return;
+        }
+        int p;
+        for (p = _buckets[b]; _chain[p] != e; p = _chain[p]) {
+            continue;
+        }
+        _chain[p] = _chain[e];
+    }
+
+    /** Remove entry E from the recency list. */
+    private void unlink(int e) {
+        if (_newer[e] == NONE) {
+            _newest = _older[e];
+        } else {
+            _older[_newer[e]] = _older[e];
+        }
+        if (_older[e] == NONE) {
+            _oldest = _newer[e];
+        } else {
+            _newer[_older[e]] = _newer[e];
+        }
+    }
+
+    /** Put entry E at the newest end of the recency list. */
+    private void linkNewest(int e) {
+        _newer[e] = NONE;
+        _older[e] = _newest;
+        if (_newest == NONE) {
+            _oldest = e;
+        } else {
+            _newer[_newest] = e;
+        }
+        _newest = e;
+    }
+
+    /** Marks the absence of an entry. */
+    private static final int NONE = -1;
+
+    /** Length of each table. */
+    private final int _size;
+
+    /** Key of each entry. */
+    private final long[] _keys;
+
+    /** Table of each entry. */
+    private final int[][] _tables;
+
+    /** Next entry in the same hash chain as each entry. */
+    private final int[] _chain;
+
+    /** Neighbors of each entry in the recency list. */
+    private final int[] _newer, _older;
+
+    /** First entry in each hash chain. */
+    private final int[] _buckets;
+
+    /** Number of entries in use. */
+    private int _count;
+
+    /** Most and least recently used entries. */
+    private int _newest, _oldest;
+
+    /** Lookup statistics. */
+    private long _hits, _misses;
+
+}
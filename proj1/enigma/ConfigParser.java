@@ -0,0 +1,228 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A reader for machine configurations in the text format: an alphabet,
+ *  the numbers of rotor slots and pawls, and then any number of rotor
+ *  descriptions, each a name, a type letter (M, N, or R) followed
+ *  immediately by the notches of a moving rotor, and the rotor's
+ *  permutation as a sequence of parenthesized cycles.  The text is
+ *  scanned once, and each rotor's cycles are entered directly into its
+ *  permutation table.  The alphabet "00-FF" stands for a ByteAlphabet,
+ *  whose symbols, in cycles and notches, are pairs of hex digits.
+ *  @author Kushal Singh
+ */
+class ConfigParser {
+
+    /** A parser for the configuration TEXT. */
+    ConfigParser(String text) {
+        _text = text.toCharArray();
+    }
+
+    /** A parser for the configuration in FILE. */
+    ConfigParser(File file) {
+        this(read(file));
+    }
+
+    /** Return the configuration in FILE, which may be in text or
+     *  compiled form. */
+    static MachineConfig load(File file) {
+        if (CompiledConfig.isCompiled(file)) {
+            return CompiledConfig.read(file);
+        }
+        return new ConfigParser(file).parse();
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()),
+                              StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the configuration I describe. */
+    MachineConfig parse() {
+        _pos = 0;
+        String chars = nextToken();
+        if (chars.equals(UPPER_CASE)) {
+            _alphabet = new UpperCaseAlphabet();
+        } else if (chars.equals(ByteAlphabet.NAME)) {
+            _alphabet = new ByteAlphabet();
+        } else {
+            _alphabet = new Alphabet(chars);
+        }
+        int numRotors = nextInt();
+        int numPawls = nextInt();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        while (skipWhitespace()) {
+            rotors.add(nextRotor());
+        }
+        return new MachineConfig(_alphabet, numRotors, numPawls, rotors);
+    }
+
+    /** Return the permutation of ALPHABET given by CYCLES, written as in
+     *  a configuration file (so that for a ByteAlphabet, each symbol is a
+     *  pair of hexadecimal digits). */
+    static Permutation permutation(String cycles, Alphabet alphabet) {
+        ConfigParser parser = new ConfigParser(cycles);
+        parser._alphabet = alphabet;
+        int[] table = parser.nextCycles();
+        if (parser.skipWhitespace()) {
+            throw error("character %c is not within a cycle",
+                        parser._text[parser._pos]);
+        }
+        return new Permutation(table, alphabet);
+    }
+
+    /** Return the rotor described at my current position. */
+    private Rotor nextRotor() {
+        String name = nextToken();
+        String typeAndNotches = nextToken();
+        Permutation perm = new Permutation(nextCycles(), _alphabet);
+        switch (typeAndNotches.charAt(0)) {
+        case 'M':
+            String notches = typeAndNotches.substring(1);
+            if (_alphabet instanceof ByteAlphabet) {
+                notches = ByteAlphabet.fromHex(notches);
+            }
+            return new MovingRotor(name, perm, notches);
+        case 'N':
+            checkNoNotches(name, typeAndNotches);
+            return new FixedRotor(name, perm);
+        case 'R':
+            checkNoNotches(name, typeAndNotches);
+            return new Reflector(name, perm);
+        default:
+            throw error("bad type for rotor %s: %s", name, typeAndNotches);
+        }
+    }
+
+    /** Check that TYPEANDNOTCHES, the type of the rotor named NAME,
+     *  lists no notches. */
+    private void checkNoNotches(String name, String typeAndNotches) {
+        if (typeAndNotches.length() > 1) {
+            throw error("non-moving rotor %s has notches", name);
+        }
+    }
+
+    /** Return the permutation table given by the cycles at my current
+     *  position, which end at the first non-blank character outside a
+     *  cycle that does not start another one.  Blanks within cycles
+     *  are ignored.  Symbols of a ByteAlphabet are pairs of hexadecimal
+     *  digits. */
+    private int[] nextCycles() {
+        int size = _alphabet.size();
+        boolean hex = _alphabet instanceof ByteAlphabet;
+        int[] forward = new int[size];
+        boolean[] used = new boolean[size];
+        for (int k = 0; k < size; k += 1) {
+            forward[k] = k;
+        }
+        while (skipWhitespace() && _text[_pos] == '(') {
+            _pos += 1;
+            int first = -1, prev = -1;
+            while (true) {
+                if (_pos == _text.length) {
+                    throw error("configuration file truncated");
+                }
+                char c = _text[_pos];
+                _pos += 1;
+                if (c == ')') {
+                    break;
+                } else if (c == '(') {
+                    throw new EnigmaException("Wrong # setting arguments.");
+                } else if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                int k;
+                if (hex) {
+                    if (_pos == _text.length) {
+                        throw error("configuration file truncated");
+                    }
+                    k = 16 * ByteAlphabet.hexDigit(c)
+                        + ByteAlphabet.hexDigit(_text[_pos]);
+                    _pos += 1;
+                } else if (!_alphabet.contains(c)) {
+                    throw error("character %c not in alphabet", c);
+                } else {
+                    k = _alphabet.toInt(c);
+                }
+                if (used[k]) {
+                    throw error("character %s repeated in cycles",
+                                hex ? String.format("%02X", k) : c);
+                }
+                used[k] = true;
+                if (prev < 0) {
+                    first = k;
+                } else {
+                    forward[prev] = k;
+                }
+                prev = k;
+            }
+            if (first >= 0) {
+                forward[prev] = first;
+            }
+        }
+        return forward;
+    }
+
+    /** Return the next blank-delimited token. */
+    private String nextToken() {
+        if (!skipWhitespace()) {
+            throw error("configuration file truncated");
+        }
+        int start = _pos;
+        while (_pos < _text.length && !Character.isWhitespace(_text[_pos])) {
+            _pos += 1;
+        }
+        return new String(_text, start, _pos - start);
+    }
+
+    /** Return the value of the next token, which must be a non-negative
+     *  decimal numeral. */
+    private int nextInt() {
+        String token = nextToken();
+        int value = 0;
+        for (int i = 0; i < token.length(); i += 1) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                throw error("bad number in configuration: %s", token);
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /** Move past any blanks at my current position, returning true iff
+     *  there is anything after them. */
+    private boolean skipWhitespace() {
+        while (_pos < _text.length && Character.isWhitespace(_text[_pos])) {
+            _pos += 1;
+        }
+        return _pos < _text.length;
+    }
+
+    /** Characters of the standard upper-case alphabet. */
+    private static final String UPPER_CASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Text of the configuration. */
+    private final char[] _text;
+
+    /** Position of the next unread character of _text. */
+    private int _pos;
+
+    /** Alphabet of the configuration. */
+    private Alphabet _alphabet;
+
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** A fork-join task that converts a range of a message in place.  Each
+ *  piece of the range is converted by its own copy of a machine, moved
+ *  ahead to the position of the piece's first character, so the result
+ *  is the same as converting the whole range in order with one machine.
+ *  The machine must be jumpable, so that moving ahead is cheap; otherwise
+ *  each piece would step through all the characters before it.
+ *  @author Kushal Singh
+ */
+class ConvertTask extends RecursiveAction {
+
+    /** Ranges no longer than this are converted without splitting. */
+    static final int GRAIN = 1 << 16;
+
+    /** A task converting MSG[FROM .. TO-1] in place, where MACHINE is
+     *  positioned to convert MSG[FROM].  MACHINE itself is not changed,
+     *  and must be jumpable. */
+    ConvertTask(Machine machine, char[] msg, int from, int to) {
+        this(machine, msg, from, to, 0);
+        if (!machine.jumpable()) {
+            throw error("machine cannot be converted in pieces");
+        }
+    }
+
+    /** A task converting MSG[FROM .. TO-1] in place, where MSG[FROM] is
+     *  character number SKIP after the current position of MACHINE. */
+    private ConvertTask(Machine machine, char[] msg, int from, int to,
+                        long skip) {
+        _machine = machine;
+        _msg = msg;
+        _from = from;
+        _to = to;
+        _skip = skip;
+    }
+
+    @Override
+    protected void compute() {
+        if (_to - _from <= GRAIN) {
+            Machine m = _machine.copy();
+            m.advance(_skip);
+            m.convert(_msg, _from, _to - _from, _msg, _from);
+        } else {
+            int mid = _from + (_to - _from) / 2;
+            invokeAll(new ConvertTask(_machine, _msg, _from, mid, _skip),
+                      new ConvertTask(_machine, _msg, mid, _to,
+                                      _skip + mid - _from));
+        }
+    }
+
+    /** For serialization. */
+    private static final long serialVersionUID = 1L;
+
+    /** Machine positioned at the start of the whole conversion. */
+    private final Machine _machine;
+
+    /** Message being converted. */
+    private final char[] _msg;
+
+    /** Bounds of the range I convert. */
+    private final int _from, _to;
+
+    /** Position of _msg[_from] relative to _machine. */
+    private final long _skip;
+
+}
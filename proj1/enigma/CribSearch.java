@@ -0,0 +1,251 @@
+package enigma;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack: given a ciphertext and a crib (a piece of
+ *  plaintext believed to lie at a known place in the message), find every
+ *  rotor order and starting position of a configuration under which the
+ *  ciphertext decrypts to the crib.  Each candidate is abandoned at the
+ *  first character that fails to match.
+ *  @author Kushal Singh
+ */
+public final class CribSearch implements SettingSearch {
+
+    /** Search for settings as described by ARGS, which are
+     *      [ OPTIONS ] CONFIG CIPHERTEXT CRIB
+     *  where CONFIG names a configuration file (text or compiled), and
+     *  CIPHERTEXT and CRIB are strings (blanks are ignored, and letters
+     *  are folded to upper case if only that is in the alphabet).
+     *  Each setting found is printed as a setting line without its
+     *  plugboard.  OPTIONS are
+     *    --offset=K      The crib starts at character K (default 0) of
+     *                    the ciphertext.
+     *    --plugboard=P   Assume plugboard cycles P (default none).
+     *    --threads=N     Search on N threads (default: one per available
+     *                    processor).
+     *  Statistics are printed on the standard error. */
+    public static void main(String... args) {
+        try {
+            int k;
+            String plugboard = "";
+            long offset = 0;
+            int threads = Runtime.getRuntime().availableProcessors();
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                if (arg.startsWith("--offset=")) {
+                    offset = number(arg);
+                } else if (arg.startsWith("--plugboard=")) {
+                    plugboard = arg.substring(arg.indexOf('=') + 1);
+                } else if (arg.startsWith("--threads=")) {
+                    threads = (int) number(arg);
+                } else {
+                    throw error("unknown option: %s", arg);
+                }
+            }
+            if (args.length - k != 3) {
+                throw error("usage: CribSearch [ OPTIONS ] CONFIG "
+                            + "CIPHERTEXT CRIB");
+            }
+            if (threads < 1) {
+                throw error("--threads needs at least 1 thread");
+            }
+
+            MachineConfig config = ConfigParser.load(new File(args[k]));
+            Alphabet alpha = config.alphabet();
+            CribSearch search =
+                new CribSearch(config, new Permutation(plugboard, alpha),
+                               indices(args[k + 1], alpha),
+                               indices(args[k + 2], alpha), offset);
+            long start = System.nanoTime();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            List<String> found;
+            try {
+                found = search.search(pool);
+            } finally {
+                pool.shutdown();
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            for (String setting : found) {
+                System.out.println(setting);
+            }
+            System.err.printf("%d candidates in %.2f s (%.0f per second), "
+                              + "%d found%n", search.candidates(), secs,
+                              search.candidates() / secs, found.size());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of option ARG, of the form --NAME=VALUE. */
+    static long number(String arg) {
+        try {
+            return Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", arg);
+        }
+    }
+
+    /** Return the indices in ALPHA of the non-blank characters of TEXT,
+     *  folding case as for Main. */
+    static int[] indices(String text, Alphabet alpha) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (!alpha.contains(c)) {
+                c = Character.toUpperCase(c);
+            }
+            if (!alpha.contains(c)) {
+                throw error("character %c not in alphabet", c);
+            }
+            result[n] = alpha.toInt(c);
+            n += 1;
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** A search of all rotor orders allowed by CONFIG, and all starting
+     *  positions, with plugboard PLUGBOARD, for those that convert the
+     *  characters of CIPHER (indices in CONFIG's alphabet) from position
+     *  OFFSET on into the characters of CRIB. */
+    CribSearch(MachineConfig config, Permutation plugboard, int[] cipher,
+               int[] crib, long offset) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + crib.length > cipher.length) {
+            throw error("crib does not fit in the ciphertext");
+        }
+        _alphabet = config.alphabet();
+        _cipher = new int[crib.length];
+        System.arraycopy(cipher, (int) offset, _cipher, 0, crib.length);
+        _crib = crib.clone();
+        _offset = offset;
+
+        List<String[]> orders = config.rotorOrders();
+        _orders = orders.toArray(new String[orders.size()][]);
+        _machines = new Machine[_orders.length];
+        for (int i = 0; i < _orders.length; i += 1) {
+            _machines[i] = new Machine(config);
+            _machines[i].insertRotors(_orders[i]);
+            _machines[i].setPlugboard(plugboard);
+        }
+
+        long positions = 1;
+        for (int i = 1; i < config.numRotors(); i += 1) {
+            if (positions > Long.MAX_VALUE / _alphabet.size()) {
+                throw error("too many starting positions to search");
+            }
+            positions *= _alphabet.size();
+        }
+        _positions = positions;
+    }
+
+    /** Return the settings found by trying every candidate on the threads
+     *  of POOL, in order. */
+    List<String> search(ForkJoinPool pool) {
+        _found.clear();
+        pool.invoke(new SearchTask(this, 0, _orders.length, 0, _positions));
+        ArrayList<String> result = new ArrayList<>(_found);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the number of rotor orders I try. */
+    int orders() {
+        return _orders.length;
+    }
+
+    /** Return the number of candidates tried so far. */
+    long candidates() {
+        return _candidates.sum();
+    }
+
+    /** Try starting positions FROM .. TO-1 with rotor order number ORDER,
+     *  recording those that fit the crib. */
+    @Override
+    public void check(int order, long from, long to) {
+        Machine m = _machines[order].copy();
+        MachineState state = m.state();
+        int[] settings = state.settings();
+        int size = _alphabet.size();
+        for (long p = from; p < to; p += 1) {
+            long q = p;
+            for (int i = settings.length - 1; i >= 1; i -= 1) {
+                settings[i] = (int) (q % size);
+                q /= size;
+            }
+            state.setPosition(0);
+            if (_offset > 0) {
+                m.advance(state, _offset);
+            }
+            int k;
+            for (k = 0; k < _crib.length; k += 1) {
+                if (m.convert(state, _cipher[k]) != _crib[k]) {
+                    break;
+                }
+            }
+            if (k == _crib.length) {
+                _found.add(describe(_orders[order], p, _alphabet));
+            }
+        }
+        _candidates.add(to - from);
+    }
+
+    /** Return a setting line, without plugboard, for the rotors named
+     *  by ORDER at starting position number POSITION, in ALPHA. */
+    static String describe(String[] order, long position, Alphabet alpha) {
+        char[] setting = new char[order.length - 1];
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] = alpha.toChar((int) (position % alpha.size()));
+            position /= alpha.size();
+        }
+        return "* " + String.join(" ", order) + " " + new String(setting);
+    }
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** The ciphertext under the crib. */
+    private final int[] _cipher;
+
+    /** The crib. */
+    private final int[] _crib;
+
+    /** Position of the crib in the message. */
+    private final long _offset;
+
+    /** The rotor orders to try, by name. */
+    private final String[][] _orders;
+
+    /** Machines with the rotors of _orders inserted, whose compiled
+     *  tables are shared by all the copies made while searching. */
+    private final Machine[] _machines;
+
+    /** Number of starting positions of each order. */
+    private final long _positions;
+
+    /** Settings found. */
+    private final ConcurrentLinkedQueue<String> _found =
+        new ConcurrentLinkedQueue<>();
+
+    /** Number of candidates tried. */
+    private final LongAdder _candidates = new LongAdder();
+
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** An InputStream that converts the bytes it reads from another stream
+ *  with a machine as they arrive.  With a ByteAlphabet every byte is
+ *  converted; otherwise each byte stands for the character 0-255 with
+ *  the same value, treated as by EnigmaReader.
+ *  @author Kushal Singh
+ */
+class EnigmaInputStream extends FilterInputStream {
+
+    /** A stream delivering the bytes of IN as converted by MACHINE, which
+     *  must be set up and is advanced as bytes are read. */
+    EnigmaInputStream(InputStream in, Machine machine) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(_one, 0, 1);
+        return n <= 0 ? -1 : _one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            _machine.convertAlphabetic(b, off, n);
+        }
+        return n;
+    }
+
+    /** Skips N bytes, which are converted and discarded so that the
+     *  machine stays in step with the input.  Skips nothing if N is
+     *  negative, as for any InputStream. */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] discard = new byte[(int) Math.min(n, SKIP_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(discard, 0,
+                         (int) Math.min(n - skipped, discard.length));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Largest buffer used by skip. */
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    /** Machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Buffer for single-byte reads. */
+    private final byte[] _one = new byte[1];
+
+}
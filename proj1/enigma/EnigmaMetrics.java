@@ -0,0 +1,138 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counts of the work done by Machines and Main, shared by all threads.
+ *  Each count is a LongAdder, which threads may add to at once without
+ *  contending, and Machines add their counts in bulk at the end of each
+ *  conversion, so that counting costs little enough to leave on.
+ *  @author Kushal Singh
+ */
+class EnigmaMetrics implements EnigmaMetricsMBean {
+
+    /** Name under which register publishes the counts. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** Return the counts for this process. */
+    static EnigmaMetrics global() {
+        return GLOBAL;
+    }
+
+    /** Publish my counts through the platform MBean server, as NAME. */
+    void register() {
+        try {
+            ObjectName name = new ObjectName(NAME);
+            if (!ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, name);
+            }
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Record that N characters were converted in NANOS nanoseconds. */
+    void converted(long n, long nanos) {
+        _characters.add(n);
+        _convertNanos.add(nanos);
+    }
+
+    /** Record that a message was set up in NANOS nanoseconds. */
+    void setUp(long nanos) {
+        _messages.increment();
+        _setupNanos.add(nanos);
+    }
+
+    /** Record STEPS rotor steps, DOUBLES of them double steps. */
+    void stepped(long steps, long doubles) {
+        _rotorSteps.add(steps);
+        _doubleSteps.add(doubles);
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return _rotorSteps.sum();
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    @Override
+    public long getSetupNanos() {
+        return _setupNanos.sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convertNanos.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        long nanos = getConvertNanos();
+        return nanos == 0 ? 0 : getCharacters() * 1e9 / nanos;
+    }
+
+    @Override
+    public void reset() {
+        _characters.reset();
+        _messages.reset();
+        _rotorSteps.reset();
+        _doubleSteps.reset();
+        _setupNanos.reset();
+        _convertNanos.reset();
+    }
+
+    /** Return a one-line summary of my counts. */
+    String summary() {
+        return String.format("%d messages, %d characters (%.0f/s), "
+                             + "%d rotor steps (%d double), "
+                             + "setup %.3f s, convert %.3f s",
+                             getMessages(), getCharacters(),
+                             getCharactersPerSecond(), getRotorSteps(),
+                             getDoubleSteps(), getSetupNanos() * 1e-9,
+                             getConvertNanos() * 1e-9);
+    }
+
+    /** The counts for this process. */
+    private static final EnigmaMetrics GLOBAL = new EnigmaMetrics();
+
+    /** Characters converted. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Messages set up. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Rotor steps. */
+    private final LongAdder _rotorSteps = new LongAdder();
+
+    /** Rotor double steps. */
+    private final LongAdder _doubleSteps = new LongAdder();
+
+    /** Time setting up messages. */
+    private final LongAdder _setupNanos = new LongAdder();
+
+    /** Time converting. */
+    private final LongAdder _convertNanos = new LongAdder();
+
+}
@@ -0,0 +1,36 @@
+package enigma;
+
+/** The management interface of EnigmaMetrics, through which its counts
+ *  are published over JMX.  (JMX requires that it be public.)  Times are
+ *  in nanoseconds.
+ *  @author Kushal Singh
+ */
+public interface EnigmaMetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the number of messages (setting lines) set up. */
+    long getMessages();
+
+    /** Return the number of single steps made by rotors. */
+    long getRotorSteps();
+
+    /** Return the number of those steps that were double steps: a rotor
+     *  moving because it was at its own notch. */
+    long getDoubleSteps();
+
+    /** Return the time spent setting up machines from setting lines. */
+    long getSetupNanos();
+
+    /** Return the time spent converting characters. */
+    long getConvertNanos();
+
+    /** Return the number of characters converted per second of
+     *  conversion time. */
+    double getCharactersPerSecond();
+
+    /** Set all counts to 0. */
+    void reset();
+
+}
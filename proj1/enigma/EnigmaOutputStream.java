@@ -0,0 +1,54 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** An OutputStream that converts the bytes written to it with a machine
+ *  and passes the results on to another stream, treating bytes as for
+ *  EnigmaInputStream.  Bytes are converted in a buffer of fixed size, so
+ *  the caller's arrays are never changed.
+ *  @author Kushal Singh
+ */
+class EnigmaOutputStream extends FilterOutputStream {
+
+    /** Size of my buffer, in bytes. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** A stream sending the bytes written to it to OUT, converted by
+     *  MACHINE, which must be set up and is advanced as bytes are
+     *  written. */
+    EnigmaOutputStream(OutputStream out, Machine machine) {
+        super(out);
+        _machine = machine;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _one[0] = (byte) b;
+        _machine.convertAlphabetic(_one, 0, 1);
+        out.write(_one[0]);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE);
+            System.arraycopy(b, off, _buffer, 0, n);
+            _machine.convertAlphabetic(_buffer, 0, n);
+            out.write(_buffer, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Bytes being converted. */
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+
+    /** Buffer for single-byte writes. */
+    private final byte[] _one = new byte[1];
+
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts the characters it reads from another Reader
+ *  with a machine as they arrive.  Characters are treated as by
+ *  EnigmaWriter: lower-case letters are folded to upper case if need
+ *  be, and other characters outside the machine's alphabet are passed
+ *  through unchanged without moving its rotors.
+ *  @author Kushal Singh
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A Reader delivering the characters of IN as converted by MACHINE,
+     *  which must be set up and is advanced as characters are read. */
+    EnigmaReader(Reader in, Machine machine) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(_one, 0, 1);
+        return n <= 0 ? -1 : _one[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = in.read(cbuf, off, len);
+        if (n > 0) {
+            _machine.convertAlphabetic(cbuf, off, n);
+        }
+        return n;
+    }
+
+    /** Skips N characters, which are converted and discarded so that
+     *  the machine stays in step with the input.  N may not be
+     *  negative, as for any Reader. */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        char[] discard = new char[(int) Math.min(n, SKIP_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(discard, 0,
+                         (int) Math.min(n - skipped, discard.length));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Largest buffer used by skip. */
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    /** Machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Buffer for single-character reads. */
+    private final char[] _one = new char[1];
+
+}
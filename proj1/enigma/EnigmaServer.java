@@ -0,0 +1,192 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** The server run by --serve: each client sends a setting line and then
+ *  any amount of text, which is sent back converted as it arrives.
+ *  @author Kushal Singh
+ */
+class EnigmaServer {
+
+    /** A server converting with machines described by CONFIG, whose
+     *  setting lines are interpreted by MAIN. */
+    EnigmaServer(Main main, MachineConfig config) {
+        _main = main;
+        _config = config;
+    }
+
+    /** Accept connections on ADDRESS, either a TCP port on the loopback
+     *  interface or unix:PATH, forever, handling each on its own thread
+     *  (a virtual thread, if this Java has them). */
+    void serve(String address) {
+        ExecutorService sessions = sessionExecutor();
+        Path socket = null;
+        try (ServerSocketChannel server = openServer(address)) {
+            if (address.startsWith("unix:")) {
+                socket = Path.of(address.substring(5));
+                final Path path = socket;
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> removeSocket(path)));
+            }
+            System.err.printf("listening on %s%n", server.getLocalAddress());
+            while (true) {
+                SocketChannel client = server.accept();
+                sessions.execute(() -> serveClient(client));
+            }
+        } catch (IOException excp) {
+            throw error("server failed: %s", excp.getMessage());
+        } finally {
+            sessions.shutdownNow();
+            if (socket != null) {
+                removeSocket(socket);
+            }
+        }
+    }
+
+    /** Return a server channel bound to ADDRESS, as for serve. */
+    private static ServerSocketChannel openServer(String address)
+        throws IOException {
+        ServerSocketChannel server;
+        SocketAddress local;
+        if (address.startsWith("unix:")) {
+            local = UnixDomainSocketAddress.of(address.substring(5));
+            removeStaleSocket((UnixDomainSocketAddress) local);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            int port;
+            try {
+                port = Integer.parseInt(address);
+            } catch (NumberFormatException excp) {
+                throw error("bad value for --serve: %s", address);
+            }
+            server = ServerSocketChannel.open();
+            local = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          port);
+        }
+        server.bind(local);
+        return server;
+    }
+
+    /** Remove the socket file of ADDRESS if it was left behind by a
+     *  server that is no longer running, so that it may be bound again.
+     *  A socket that accepts connections is left alone. */
+    private static void removeStaleSocket(UnixDomainSocketAddress address) {
+        Path path = address.getPath();
+        if (!isSocket(path)) {
+            return;
+        }
+        try (SocketChannel probe =
+             SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(address);
+            return;
+        } catch (IOException excp) {
+            removeSocket(path);
+        }
+    }
+
+    /** Remove PATH if it is a Unix-domain socket. */
+    private static void removeSocket(Path path) {
+        try {
+            if (isSocket(path)) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return true iff PATH names a Unix-domain socket (and not, for
+     *  example, a link to one). */
+    private static boolean isSocket(Path path) {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode",
+                                                    LinkOption.NOFOLLOW_LINKS);
+            return (mode & S_IFMT) == S_IFSOCK;
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** File type bits of a Unix file mode, and their value for a
+     *  socket. */
+    private static final int S_IFMT = 0170000, S_IFSOCK = 0140000;
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  or, on Java releases without them, on a pooled platform thread. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Read a setting line from CLIENT, and then convert the text that
+     *  follows with a machine set up by that line, sending the results
+     *  back as they are produced.  Problems with the setting line are
+     *  reported to the client. */
+    private void serveClient(SocketChannel client) {
+        try (SocketChannel channel = client;
+             Reader in = new InputStreamReader(
+                 Channels.newInputStream(channel), StandardCharsets.UTF_8);
+             Writer out = new OutputStreamWriter(
+                 Channels.newOutputStream(channel), StandardCharsets.UTF_8)) {
+            StringBuilder setting = new StringBuilder();
+            for (int c = in.read(); c >= 0 && c != '\n'; c = in.read()) {
+                setting.append((char) c);
+            }
+            Machine M = new Machine(_config);
+            try {
+                _main.setUp(M, setting.toString().trim());
+            } catch (RuntimeException excp) {
+                out.write(String.format("Error: %s%n", excp.getMessage()));
+                return;
+            }
+            char[] buf = new char[EnigmaWriter.BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                long start = System.nanoTime();
+                M.convertAlphabetic(buf, 0, n);
+                _metrics.converted(n, System.nanoTime() - start);
+                out.write(buf, 0, n);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Interprets setting lines. */
+    private final Main _main;
+
+    /** Description of the machines used. */
+    private final MachineConfig _config;
+
+    /** Counts of the work done. */
+    private final EnigmaMetrics _metrics = EnigmaMetrics.global();
+
+}
@@ -0,0 +1,68 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts the characters written to it with a machine
+ *  and passes the results on to another Writer.  Lower-case letters are
+ *  converted as their upper-case equivalents when only those are in the
+ *  machine's alphabet; other characters outside the alphabet are passed
+ *  on unchanged and do not move its rotors.  Characters are converted in
+ *  a buffer of fixed size, so the caller's arrays are never changed.
+ *  @author Kushal Singh
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** Size of my buffer, in characters. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** A Writer sending the characters written to it to OUT, converted
+     *  by MACHINE, which must be set up and is advanced as characters
+     *  are written. */
+    EnigmaWriter(Writer out, Machine machine) {
+        super(out);
+        _machine = machine;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _one[0] = (char) c;
+        _machine.convertAlphabetic(_one, 0, 1);
+        out.write(_one[0]);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE);
+            System.arraycopy(cbuf, off, _buffer, 0, n);
+            _machine.convertAlphabetic(_buffer, 0, n);
+            out.write(_buffer, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE);
+            str.getChars(off, off + n, _buffer, 0);
+            _machine.convertAlphabetic(_buffer, 0, n);
+            out.write(_buffer, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Characters being converted. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+
+    /** Buffer for single-character writes. */
+    private final char[] _one = new char[1];
+
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+/** The permutations performed by a machine on a run of keystrokes
+ *  following some setting, computed in advance, together with a cursor
+ *  marking how many of them have been used.  The tables may be shared
+ *  among any number of Keystreams; only the cursor is my own.  The
+ *  rotor steps that the keystrokes stand for are added to the global
+ *  metrics as they are used, as if the machine had taken them.
+ *  @author Kushal Singh
+ */
+class Keystream {
+
+    /** A keystream over alphabet ALPHA whose Kth permutation is
+     *  TABLE[K * S .. K * S + S - 1], where S is the size of ALPHA, and
+     *  whose first K keystrokes take STEPS[K] rotor steps, DOUBLES[K] of
+     *  them double steps, all as filled in by Machine.keystream.  The
+     *  arrays are not copied. */
+    Keystream(Alphabet alpha, int[] table, int[] steps, int[] doubles) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _table = table;
+        _steps = steps;
+        _doubles = doubles;
+        _length = table.length / _size;
+    }
+
+    /** A keystream sharing the tables of OTHER, with none of its
+     *  keystrokes used. */
+    Keystream(Keystream other) {
+        this(other._alphabet, other._table, other._steps, other._doubles);
+    }
+
+    /** Return the number of keystrokes I cover. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the number of keystrokes used so far. */
+    int position() {
+        return _position;
+    }
+
+    /** Convert as many of the characters BUF[OFF .. OFF+LEN-1] in place
+     *  as I have keystrokes left for, and return how many that was.
+     *  Blanks are copied unchanged and use no keystroke, as for
+     *  Machine.convert. */
+    int convert(char[] buf, int off, int len) {
+        int start = _position;
+        int i;
+        for (i = 0; i < len && _position < _length; i += 1) {
+            char c = buf[off + i];
+            if (c != ' ') {
+                int k = _position * _size + _alphabet.toInt(c);
+                buf[off + i] = _alphabet.toChar(_table[k]);
+                _position += 1;
+            }
+        }
+        if (_position != start) {
+            EnigmaMetrics.global().stepped(_steps[_position] - _steps[start],
+                                           _doubles[_position]
+                                           - _doubles[start]);
+        }
+        return i;
+    }
+
+    /** Return the number of bytes in my tables. */
+    long bytes() {
+        return 4L * (_table.length + _steps.length + _doubles.length);
+    }
+
+    /** Alphabet of my machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Permutations for successive keystrokes, laid end to end. */
+    private final int[] _table;
+
+    /** Numbers of rotor steps and double steps taken by the first K
+     *  keystrokes, indexed by K. */
+    private final int[] _steps, _doubles;
+
+    /** Number of keystrokes in _table. */
+    private final int _length;
+
+    /** Number of keystrokes used. */
+    private int _position;
+
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of keystreams for the first few keystrokes after a setting
+ *  line, so that messages sent repeatedly under the same settings need
+ *  not pass through the rotors again.  Entries are keyed by the
+ *  normalized setting line, and the least recently used ones are
+ *  discarded to keep the total size of the tables under a limit.
+ *  @author Kushal Singh
+ */
+class KeystreamCache {
+
+    /** A cache of keystreams of POSITIONS > 0 keystrokes each, holding
+     *  at most CAPACITY bytes of tables. */
+    KeystreamCache(int positions, long capacity) {
+        if (positions <= 0) {
+            throw error("keystream must cover at least 1 position");
+        }
+        _positions = positions;
+        _capacity = capacity;
+    }
+
+    /** Return a keystream for MACHINE, which has just been set up
+     *  according to the setting line SETTING, or null if a keystream of
+     *  my length would not fit in me at all. */
+    Keystream get(String setting, Machine machine) {
+        Alphabet alpha = machine.config().alphabet();
+        long bytes = 4L * _positions * alpha.size() + 8L * (_positions + 1);
+        if (bytes > _capacity) {
+            return null;
+        }
+        String key = normalize(setting);
+        Keystream stream = _streams.get(key);
+        if (stream != null) {
+            _hits += 1;
+        } else {
+            _misses += 1;
+            int[] table = new int[_positions * alpha.size()];
+            int[] steps = new int[_positions + 1];
+            int[] doubles = new int[_positions + 1];
+            machine.keystream(_positions, table, steps, doubles);
+            stream = new Keystream(alpha, table, steps, doubles);
+            _streams.put(key, stream);
+            _bytes += bytes;
+            Iterator<Keystream> eldest = _streams.values().iterator();
+            while (_bytes > _capacity) {
+                _bytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        }
+        return new Keystream(stream);
+    }
+
+    /** Return SETTING with surrounding whitespace and the amount of
+     *  whitespace between items made irrelevant.  Case is kept, since
+     *  alphabets may distinguish it. */
+    static String normalize(String setting) {
+        return setting.trim().replaceAll("\\s+", " ");
+    }
+
+    /** Return the number of keystrokes in each of my keystreams. */
+    int positions() {
+        return _positions;
+    }
+
+    /** Return the number of bytes in my tables. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of setting lines I hold. */
+    int count() {
+        return _streams.size();
+    }
+
+    /** Return the number of calls to get that found a keystream. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that computed a keystream. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Number of keystrokes in each keystream. */
+    private final int _positions;
+
+    /** Maximum value of _bytes. */
+    private final long _capacity;
+
+    /** Unused keystreams, whose tables are shared with those returned
+     *  by get, keyed by normalized setting line, from least to most
+     *  recently used. */
+    private final LinkedHashMap<String, Keystream> _streams =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the tables in _tables. */
+    private long _bytes;
+
+    /** Lookup statistics. */
+    private long _hits, _misses;
+
+}
@@ -1,11 +1,15 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
 import java.util.Collection;
 
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The rotors it uses
+ *  come from a shared MachineConfig and are never changed; the machine's
+ *  own rotor positions are kept in a MachineState.
  *  @author Kushal Singh
  */
 class Machine {
@@ -15,62 +19,52 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
-        _numRotors = numRotors;
-        _pawls = pawls;
-        _allRotors = new ArrayList<Rotor>(allRotors);
+        this(new MachineConfig(alpha, numRotors, pawls, allRotors));
+    }
+
+    /** A new Enigma machine as described by CONFIG, which it may share
+     *  with other machines. */
+    Machine(MachineConfig config) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+    }
+
+    /** Return my configuration. */
+    MachineConfig config() {
+        return _config;
     }
 
     /** Return the number of rotor slots I have. */
     int numRotors() {
-        return _numRotors;
+        return _config.numRotors();
     }
 
     /** Return the number pawls (and thus rotating rotors) I have. */
     int numPawls() {
-        return _pawls;
+        return _config.numPawls();
     }
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  If the rotors
+     *  are the ones already in my slots, my tables and any cached
+     *  composite permutations are kept. */
     void insertRotors(String[] rotors) {
-        int count = 0;
-        for (int i = 0; i < rotors.length; i++) {
-            for (Rotor checkName : _allRotors) {
-                String rotorName = rotors[i].toUpperCase();
-                String check = checkName.name().toUpperCase();
-                if (rotorName.equals(check)) {
-                    count++;
-                }
+        Rotor[] using = new Rotor[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            using[i] = _config.rotor(rotors[i]);
+            if (using[i] == null) {
+                throw new EnigmaException("Rotors named incorrectly.");
             }
         }
-        if (count != rotors.length) {
-            throw new EnigmaException("Rotors named incorrectly.");
-        }
-
-        String reflectorName = rotors[0];
-        Rotor x = null;
-        for (Rotor rotor : _allRotors) {
-            if (rotor.name().equals(reflectorName)) {
-                x = rotor;
-            }
-        }
-        if (!x.reflecting()) {
+        if (!using[0].reflecting()) {
             throw new EnigmaException("The first rotor must be a reflector.");
         }
-        _usingRotors = new Rotor[rotors.length];
-        for (int i = 0; i < rotors.length; i++) {
-            for (Rotor r : _allRotors) {
-                if (rotors[i].toUpperCase().equals(r.name().toUpperCase())) {
-                    _usingRotors[i] = r;
-                }
-            }
-        }
 
         int counter = 0;
-        for (int i = 0; i < _usingRotors.length; i++) {
-            if (_usingRotors[i].rotates()) {
+        for (Rotor r : using) {
+            if (r.rotates()) {
                 counter += 1;
             }
         }
@@ -78,115 +72,724 @@ class Machine {
             throw new EnigmaException("Wrong number of arguments");
         }
 
+        if (_usingRotors != null && Arrays.equals(using, _usingRotors)) {
+            Arrays.fill(_state.settings(), 0);
+            Arrays.fill(_origin, 0);
+            _state.setPosition(0);
+            return;
+        }
+        _usingRotors = using;
+        _forward = new int[using.length][];
+        _backward = new int[using.length][];
+        _notches = new boolean[using.length][_size];
+        _rotates = new boolean[using.length];
+        if (_alphabet instanceof ByteAlphabet) {
+            _forwardBytes = new byte[using.length][];
+            _backwardBytes = new byte[using.length][];
+        }
+        _firstMoving = using.length - counter;
+        _jumpable = true;
+        _tabled = true;
+        for (int i = 0; i < using.length; i += 1) {
+            Rotor r = using[i];
+            _forward[i] = r.forwardTable();
+            _backward[i] = r.backwardTable();
+            _tabled &= r.tabled();
+            if (_forwardBytes != null) {
+                _forwardBytes[i] = r.forwardBytes();
+                _backwardBytes[i] = r.backwardBytes();
+            }
+            for (int k = 0; k < _size; k += 1) {
+                _notches[i][k] = r.atNotch(k);
+            }
+            _rotates[i] = r.rotates();
+            if (r.rotates() != (i >= _firstMoving)) {
+                _jumpable = false;
+            } else if (r.rotates() && ((MovingRotor) r).adjacentNotches()) {
+                _jumpable = false;
+            }
+        }
+        _state = new MachineState(using.length);
+        _origin = new int[using.length];
+        _packable =
+            using.length * Math.log(_size) < Math.log(Long.MAX_VALUE);
+        clearComposites();
     }
 
     /** Set my rotors according to SETTING, which must be a string of four
      *  upper-case letters. The first letter refers to the leftmost
      *  rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        Rotor r;
+        int[] settings = _state.settings();
         int len = setting.length();
         for (int i = numRotors() - 1; i >= 1; i--) {
-            r = _usingRotors[i];
-            r.set((setting.charAt(len - 1)));
+            char c = setting.charAt(len - 1);
+            if (!_alphabet.contains(c)) {
+                throw error("setting %c not in alphabet", c);
+            }
+            settings[i] = _alphabet.toInt(c);
             len--;
         }
+        System.arraycopy(settings, 0, _origin, 0, _origin.length);
+        _state.setPosition(0);
     }
 
-    /** Set the plugboard to PLUGBOARD. */
+    /** Set the plugboard to PLUGBOARD.  Setting the plugboard I already
+     *  have (or an identical one) keeps any cached composite
+     *  permutations. */
     void setPlugboard(Permutation plugboard) {
+        if (plugboard.same(_plugBoard)) {
+            return;
+        }
         _plugBoard = plugboard;
+        if (_alphabet instanceof ByteAlphabet) {
+            int[] table = new int[_size];
+            for (int k = 0; k < _size; k += 1) {
+                table[k] = plugboard.permute(k);
+            }
+            _plugBytes = Rotor.narrow(table);
+        }
+        clearComposites();
+    }
+
+    /** Have convert(int) remember the permutation performed by the whole
+     *  machine (plugboard, rotors, reflector, and back) at each of up to
+     *  CAPACITY recent rotor positions, so that converting at a position
+     *  seen before takes one table lookup.  A CAPACITY of 0 turns this
+     *  off.  The cache is cleared whenever my rotors or plugboard change. */
+    void cacheComposites(int capacity) {
+        if (capacity < 0) {
+            throw error("negative cache capacity");
+        } else if (capacity == 0) {
+            _composites = null;
+        } else if (_usingRotors != null && !_packable) {
+            throw error("too many rotor positions to cache");
+        } else {
+            _composites = new CompositeCache(capacity, _size);
+        }
+    }
+
+    /** Return my cache of composite permutations, or null if I have
+     *  none. */
+    CompositeCache composites() {
+        return _composites;
+    }
+
+    /** Empty my cache of composite permutations, if any. */
+    private void clearComposites() {
+        if (_composites == null) {
+            return;
+        }
+        if (!_packable) {
+            throw error("too many rotor positions to cache");
+        }
+        _composites.clear();
+    }
+
+    /** Return my own rotor positions.  Changing the result changes me. */
+    MachineState state() {
+        return _state;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        _usingRotors[_usingRotors.length - 1].advance();
+        if (_composites == null) {
+            int[] settings = _state.settings();
+            count(advanceRotors(settings));
+            _state.setPosition(_state.position() + 1);
+            return passThrough(settings, c);
+        }
+        int[] settings = _state.settings();
+        count(advanceRotors(settings));
+        _state.setPosition(_state.position() + 1);
+        long key = 0;
+        for (int i = settings.length - 1; i >= 0; i -= 1) {
+            key = key * _size + settings[i];
+        }
+        int[] composite = _composites.get(key);
+        if (composite == null) {
+            composite = _composites.put(key);
+            for (int k = 0; k < _size; k += 1) {
+                composite[k] = passThrough(settings, k);
+            }
+        }
+        return composite[_plugBoard.wrap(c)];
+    }
+
+    /** Returns the result of converting the input character C as for
+     *  convert(C), but advancing the rotor positions in STATE instead of
+     *  my own.  This does not change me, so any number of threads may
+     *  convert with one machine, each with its own STATE, as long as no
+     *  rotors or plugboard are changed meanwhile. */
+    int convert(MachineState state, int c) {
+        int[] settings = state.settings();
+        advanceRotors(settings);
+        state.setPosition(state.position() + 1);
+        return passThrough(settings, c);
+    }
+
+    /** Fill TABLE[K * S .. K * S + S - 1], where S is the size of my
+     *  alphabet, with the permutation performed by the Kth following
+     *  keystroke, for 0 <= K < COUNT.  My rotors do not move. */
+    void keystream(int count, int[] table) {
+        keystream(count, table, null, null);
+    }
+
+    /** As for keystream(COUNT, TABLE), and unless they are null, also
+     *  set STEPS[K] and DOUBLES[K] to the numbers of rotor steps and
+     *  double steps taken in the first K keystrokes, for
+     *  0 <= K <= COUNT. */
+    void keystream(int count, int[] table, int[] steps, int[] doubles) {
+        int[] settings = _state.settings().clone();
+        if (steps != null) {
+            steps[0] = doubles[0] = 0;
+        }
+        for (int k = 0, base = 0; k < count; k += 1, base += _size) {
+            int events = advanceRotors(settings);
+            if (steps != null) {
+                steps[k + 1] = steps[k] + (events & (DOUBLE_STEP - 1));
+                doubles[k + 1] = doubles[k] + (events >>> DOUBLE_SHIFT);
+            }
+            for (int c = 0; c < _size; c += 1) {
+                table[base + c] = passThrough(settings, c);
+            }
+        }
+    }
+
+    /** Return the result of passing C through the plugboard, rotors,
+     *  reflector, and back again with my rotors at SETTINGS, without
+     *  moving them. */
+    private int passThrough(int[] settings, int c) {
+        if (!_tabled) {
+            return passThroughPermutations(settings, c);
+        }
         int index = _plugBoard.permute(c);
-        index = _usingRotors[_usingRotors.length - 1].convertForward(index);
-        boolean maybe = false;
-
-        for (int i = _usingRotors.length - 2; i >= 0; i--) {
-            Rotor r = _usingRotors[i];
-            int count = 0;
-            if (_usingRotors[i + 1].atNotch() && i + 1 == numRotors() - 1) {
-                r.advance();
-                if (_usingRotors[i].atNotch()) {
-                    count++;
-                    _usingRotors[i - 1].advance();
-                }
-                count++;
-            }
-            if (((i) != (numRotors() - 1)) && r.rotates()) {
-                int[] arr = r.getNotchesArr();
-                for (int k = 0; k < arr.length; k++) {
-                    int cur = arr[k];
-                    if (('A' + r.permutation().wrap((r.setting()))) == cur) {
-                        maybe = true;
-                    }
-                }
-                if (maybe && count == 0 && _usingRotors[i - 1].rotates()) {
-                    r.advance();
-                    _usingRotors[i - 1].advance();
-                    index = r.convertForward(index);
-                    index = _usingRotors[i - 1].convertForward(index);
-                    count++;
-                    i--;
-                } else if (maybe) {
-                    index = r.convertForward(index);
-                } else {
-                    count++;
-                    index = r.convertForward(index);
+        for (int i = settings.length - 1; i >= 0; i -= 1) {
+            index = _forward[i][settings[i] * _size + index];
+        }
+        for (int i = 1; i < settings.length; i += 1) {
+            index = _backward[i][settings[i] * _size + index];
+        }
+        return _plugBoard.permute(index);
+    }
+
+    /** Return passThrough(SETTINGS, C), computed from my rotors'
+     *  permutations rather than their tables, for rotors too large to
+     *  have tables. */
+    private int passThroughPermutations(int[] settings, int c) {
+        int index = _plugBoard.permute(c);
+        for (int i = settings.length - 1; i >= 0; i -= 1) {
+            Permutation perm = _usingRotors[i].permutation();
+            index = perm.wrap(perm.permute(index + settings[i])
+                              - settings[i]);
+        }
+        for (int i = 1; i < settings.length; i += 1) {
+            Permutation perm = _usingRotors[i].permutation();
+            index = perm.wrap(perm.invert(index + settings[i])
+                              - settings[i]);
+        }
+        return _plugBoard.permute(index);
+    }
+
+    /** Advance the rotors in SETTINGS as for one keystroke.  A rotor with
+     *  a pawl moves if it is the rightmost rotor, if the rotor to its
+     *  right is at a notch, or if it is itself at a notch and the rotor to
+     *  its left has a pawl (double stepping).  Working from left to
+     *  right, each decision sees the notches as they were before the
+     *  keystroke.  Returns the number of rotors that moved, plus
+     *  DOUBLE_STEP for each that moved only because of its own notch. */
+    private int advanceRotors(int[] settings) {
+        int last = settings.length - 1;
+        int events = 0;
+        for (int i = 0; i <= last; i += 1) {
+            if (!_rotates[i]) {
+                continue;
+            }
+            boolean carried = i == last || _notches[i + 1][settings[i + 1]];
+            if (carried || _notches[i][settings[i]] && _rotates[i - 1]) {
+                settings[i] += 1;
+                if (settings[i] == _size) {
+                    settings[i] = 0;
                 }
+                events += carried ? 1 : 1 + DOUBLE_STEP;
             }
-            if (!maybe && !r.atNotch() && i == 3 && count == 0)  {
-                index = r.convertForward(index);
-            } else if ((!r.rotates()) || i == 0) {
-                index = r.convertForward(index);
+        }
+        return events;
+    }
+
+    /** Add EVENTS, as returned by advanceRotors, to my uncounted
+     *  steps. */
+    private void count(int events) {
+        _steps += events & (DOUBLE_STEP - 1);
+        _doubleSteps += events >>> DOUBLE_SHIFT;
+    }
+
+    /** Add my uncounted steps to the global metrics. */
+    private void flushSteps() {
+        if (_steps != 0) {
+            EnigmaMetrics.global().stepped(_steps, _doubleSteps);
+            _steps = _doubleSteps = 0;
+        }
+    }
+
+    /** Return the number of keystrokes since my rotors were last set. */
+    long position() {
+        return _state.position();
+    }
+
+    /** Move my rotors to where they would be after POSITION keystrokes
+     *  from their last setting by setRotors. */
+    void seek(long position) {
+        System.arraycopy(_origin, 0, _state.settings(), 0, _origin.length);
+        _state.setPosition(0);
+        advance(position);
+    }
+
+    /** Return true iff advance takes time independent of the number of
+     *  keystrokes, rather than stepping through them (see advance). */
+    boolean jumpable() {
+        return _jumpable;
+    }
+
+    /** Advance my rotors as for N keystrokes, without converting anything.
+     *  Takes time proportional to the square of the number of rotors,
+     *  independent of N, unless some rotor has notches at two consecutive
+     *  settings or the rotors with pawls are not the rightmost ones, in
+     *  which case the rotors are simply stepped N times. */
+    void advance(long n) {
+        advance(_state, n);
+    }
+
+    /** Advance the rotor positions in STATE as for advance(N). */
+    void advance(MachineState state, long n) {
+        if (n < 0) {
+            throw error("cannot advance by %d keystrokes", n);
+        }
+        state.setPosition(state.position() + n);
+        if (n == 0) {
+            return;
+        }
+        int[] settings = state.settings();
+        advanceRotors(settings);
+        n -= 1;
+        if (!_jumpable) {
+            for (; n > 0; n -= 1) {
+                advanceRotors(settings);
             }
+        } else if (n > 0 && _firstMoving < settings.length) {
+            jump(settings, n);
         }
+    }
 
-        for (int i = 1; i < _usingRotors.length; i++) {
-            Rotor r = _usingRotors[i];
-            index = r.convertBackward(index);
+    /** Advance the rotors in SETTINGS as for N >= 1 keystrokes, assuming
+     *  that they have made at least one keystroke since being set.  In
+     *  that case, a rotor other than the leftmost moving one that is at a
+     *  notch got there on the previous keystroke and leaves on the next,
+     *  and each rotor's total steps follow from the steps of the rotor to
+     *  its right: it moves once for each time that rotor leaves a notch,
+     *  and once more for each notch that it lands on itself. */
+    private void jump(int[] settings, long n) {
+        int last = settings.length - 1;
+        long[] steps = new long[settings.length];
+        steps[last] = n;
+        for (int j = last - 1; j >= _firstMoving; j -= 1) {
+            MovingRotor right = (MovingRotor) _usingRotors[j + 1];
+            MovingRotor r = (MovingRotor) _usingRotors[j];
+            long carries = right.notchesFrom(settings[j + 1], steps[j + 1]);
+            if (j == _firstMoving) {
+                steps[j] = carries;
+            } else if (carries == 0) {
+                steps[j] = r.atNotch(settings[j]) ? 1 : 0;
+            } else {
+                steps[j] = r.nthPlain(settings[j], carries) + 1;
+                int landing = (int) ((settings[j] + steps[j]) % _size);
+                if (r.atNotch(landing)
+                    && carryTime(settings, j + 1, carries) < n - 1) {
+                    steps[j] += 1;
+                }
+            }
+        }
+        for (int j = _firstMoving; j <= last; j += 1) {
+            settings[j] = (int) ((settings[j] + steps[j]) % _size);
         }
-        return _plugBoard.permute(index);
     }
 
+    /** Return the keystroke, counting from 0, on which the rotor in slot J,
+     *  starting from SETTINGS, will leave a notch for the Kth (K >= 1)
+     *  time, under the same assumptions as jump. */
+    private long carryTime(int[] settings, int j, long k) {
+        MovingRotor r = (MovingRotor) _usingRotors[j];
+        long d = r.nthNotch(settings[j], k);
+        if (j == settings.length - 1 || d == 0) {
+            return d;
+        }
+        long carry = d - r.notchesFrom(settings[j], d);
+        return carryTime(settings, j + 1, carry) + 1;
+    }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        char[] msgChars = msg.toCharArray();
-        String result = "";
-        for (char c: msgChars) {
+        char[] buf = msg.toCharArray();
+        convert(buf, 0, buf.length, buf);
+        return new String(buf);
+    }
+
+    /** Convert the LEN characters SRC[OFF .. OFF+LEN-1] into
+     *  DST[0 .. LEN-1], updating the state of the rotors accordingly.
+     *  Blanks are copied unchanged and do not advance the rotors.  SRC
+     *  and DST may be the same array. */
+    void convert(char[] src, int off, int len, char[] dst) {
+        convert(src, off, len, dst, 0);
+    }
+
+    /** Convert SRC[OFF .. OFF+LEN-1] into DST[DSTOFF .. DSTOFF+LEN-1], as
+     *  for convert(SRC, OFF, LEN, DST). */
+    void convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        for (int i = 0; i < len; i += 1) {
+            char c = src[off + i];
             if (c == ' ') {
-                result = result + " ";
+                dst[dstOff + i] = c;
             } else {
-                char x = (char) (convert((c - 'A')) + 'A');
-                result = result + x;
+                dst[dstOff + i] =
+                    _alphabet.toChar(convert(_alphabet.toInt(c)));
             }
         }
+        flushSteps();
+    }
+
+    /** Convert those of BUF[OFF .. OFF+LEN-1] that are in my alphabet in
+     *  place, updating the state of the rotors accordingly.  A character
+     *  not in my alphabet whose upper-case equivalent is (as for a
+     *  lower-case letter with an upper-case alphabet) is converted as
+     *  that equivalent, as Main does.  Other characters are left as they
+     *  are and do not advance the rotors. */
+    void convertAlphabetic(char[] buf, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            char c = fold(buf[i]);
+            if (_alphabet.contains(c)) {
+                buf[i] = _alphabet.toChar(convert(_alphabet.toInt(c)));
+            }
+        }
+        flushSteps();
+    }
+
+    /** Convert BUF[OFF .. OFF+LEN-1] in place as for the characters
+     *  0-255 they stand for, as by convertAlphabetic(char[], int, int).
+     *  With a ByteAlphabet, every byte is converted. */
+    void convertAlphabetic(byte[] buf, int off, int len) {
+        if (_forwardBytes != null) {
+            ByteBuffer bytes = ByteBuffer.wrap(buf, off, len);
+            convert(bytes, bytes.duplicate());
+            return;
+        }
+        for (int i = off; i < off + len; i += 1) {
+            char c = fold((char) (buf[i] & 0xff));
+            if (_alphabet.contains(c)) {
+                c = _alphabet.toChar(convert(_alphabet.toInt(c)));
+                if (c > 0xff) {
+                    throw error("character %c is not a byte", c);
+                }
+                buf[i] = (byte) c;
+            }
+        }
+        flushSteps();
+    }
+
+    /** Return C, or its upper-case equivalent if only that is in my
+     *  alphabet. */
+    private char fold(char c) {
+        if (!_alphabet.contains(c)) {
+            char upper = Character.toUpperCase(c);
+            if (_alphabet.contains(upper)) {
+                return upper;
+            }
+        }
+        return c;
+    }
+
+    /** Convert bytes from SRC into DST, as many as both have remaining,
+     *  updating the state of the rotors accordingly.  My alphabet must be
+     *  a ByteAlphabet.  SRC and DST may share content, as long as DST
+     *  does not run ahead of SRC.  Composite permutations are not
+     *  cached. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        if (_forwardBytes == null) {
+            throw error("machine does not have a byte alphabet");
+        }
+        int[] settings = _state.settings();
+        int n = Math.min(src.remaining(), dst.remaining());
+        for (int i = 0; i < n; i += 1) {
+            count(advanceRotors(settings));
+            int index = _plugBytes[src.get() & 0xff] & 0xff;
+            for (int j = settings.length - 1; j >= 0; j -= 1) {
+                index = _forwardBytes[j][settings[j] << 8 | index] & 0xff;
+            }
+            for (int j = 1; j < settings.length; j += 1) {
+                index = _backwardBytes[j][settings[j] << 8 | index] & 0xff;
+            }
+            dst.put(_plugBytes[index]);
+        }
+        _state.setPosition(_state.position() + n);
+        flushSteps();
+    }
+
+    /** Return a new machine with my configuration, rotors, settings and
+     *  plugboard, whose rotors move independently of mine.  The copy
+     *  shares everything but my rotor positions, and does not cache
+     *  composite permutations. */
+    Machine copy() {
+        Machine result = new Machine(_config);
+        if (_state != null) {
+            result.restore(snapshot());
+        }
+        return result;
+    }
+
+    /** Return a record of my rotors, plugboard and rotor positions, from
+     *  which restore can later reset me (or another machine with my
+     *  configuration) to my current state. */
+    Snapshot snapshot() {
+        if (_state == null) {
+            throw error("no rotors inserted");
+        }
+        return new Snapshot(this);
+    }
+
+    /** Reset my rotors, plugboard and rotor positions to those recorded in
+     *  SNAPSHOT, taken from a machine with my configuration.  Takes time
+     *  proportional to the number of rotors: the conversion tables are
+     *  shared with SNAPSHOT, and my cache of composite permutations, if
+     *  any, is kept unless the rotors or plugboard differ from mine. */
+    void restore(Snapshot snapshot) {
+        if (snapshot._config != _config) {
+            throw error("snapshot of a differently configured machine");
+        }
+        boolean changed = false;
+        if (snapshot._rotors != _usingRotors) {
+            _usingRotors = snapshot._rotors;
+            _forward = snapshot._forward;
+            _backward = snapshot._backward;
+            _forwardBytes = snapshot._forwardBytes;
+            _backwardBytes = snapshot._backwardBytes;
+            _notches = snapshot._notches;
+            _rotates = snapshot._rotates;
+            _firstMoving = snapshot._firstMoving;
+            _jumpable = snapshot._jumpable;
+            _tabled = snapshot._tabled;
+            _packable = snapshot._packable;
+            if (_state == null
+                || _state.settings().length != _usingRotors.length) {
+                _state = new MachineState(_usingRotors.length);
+                _origin = new int[_usingRotors.length];
+            }
+            changed = true;
+        }
+        if (snapshot._plugBoard != _plugBoard) {
+            _plugBoard = snapshot._plugBoard;
+            _plugBytes = snapshot._plugBytes;
+            changed = true;
+        }
+        System.arraycopy(snapshot._settings, 0, _state.settings(), 0,
+                         _origin.length);
+        System.arraycopy(snapshot._origin, 0, _origin, 0, _origin.length);
+        _state.setPosition(snapshot._position);
+        if (changed) {
+            clearComposites();
+        }
+    }
+
+    /** Return a batch of LANES machines that convert in lockstep, each
+     *  with my rotors and plugboard and with its rotors at my current
+     *  positions.  The batch shares my rotor tables, so my alphabet
+     *  must be small enough for them (see Rotor.tabled). */
+    MachineBatch batch(int lanes) {
+        if (!_tabled) {
+            throw error("alphabet too large for batch conversion");
+        }
+        int[] plugboard = new int[_size];
+        for (int k = 0; k < _size; k += 1) {
+            plugboard[k] = _plugBoard.permute(k);
+        }
+        MachineBatch result =
+            new MachineBatch(lanes, _size, _forward, _backward, _notches,
+                             _rotates, plugboard);
+        for (int l = 0; l < lanes; l += 1) {
+            result.load(l, _state);
+        }
         return result;
     }
 
+    /** The rotors, plugboard and rotor positions of a Machine at some
+     *  moment, as returned by Machine.snapshot.  Apart from the rotor
+     *  positions, a snapshot refers to the machine's own conversion tables
+     *  and plugboard (which are never changed once made) rather than
+     *  copying them, so it is small and quick to take. */
+    static final class Snapshot {
+
+        /** A record of the current state of M. */
+        private Snapshot(Machine M) {
+            _config = M._config;
+            _rotors = M._usingRotors;
+            _forward = M._forward;
+            _backward = M._backward;
+            _forwardBytes = M._forwardBytes;
+            _backwardBytes = M._backwardBytes;
+            _notches = M._notches;
+            _rotates = M._rotates;
+            _firstMoving = M._firstMoving;
+            _jumpable = M._jumpable;
+            _tabled = M._tabled;
+            _packable = M._packable;
+            _plugBoard = M._plugBoard;
+            _plugBytes = M._plugBytes;
+            _settings = M._state.settings().clone();
+            _origin = M._origin.clone();
+            _position = M._state.position();
+        }
+
+        /** Return the names of the rotors recorded, reflector first. */
+        String[] rotors() {
+            String[] names = new String[_rotors.length];
+            for (int i = 0; i < names.length; i += 1) {
+                names[i] = _rotors[i].name();
+            }
+            return names;
+        }
+
+        /** Return the setting recorded for the rotor in slot K. */
+        int setting(int k) {
+            return _settings[k];
+        }
+
+        /** Return the plugboard recorded, or null if none was set. */
+        Permutation plugboard() {
+            return _plugBoard;
+        }
+
+        /** Return the number of keystrokes recorded since the rotors were
+         *  set. */
+        long position() {
+            return _position;
+        }
+
+        /** Configuration of the machine recorded. */
+        private final MachineConfig _config;
+
+        /** The machine's rotors and the per-slot tables made from them,
+         *  as in Machine; shared, never modified. */
+        private final Rotor[] _rotors;
+
+        /** As in Machine. */
+        private final int[][] _forward, _backward;
+
+        /** As in Machine. */
+        private final byte[][] _forwardBytes, _backwardBytes;
+
+        /** As in Machine. */
+        private final boolean[][] _notches;
+
+        /** As in Machine. */
+        private final boolean[] _rotates;
+
+        /** As in Machine. */
+        private final int _firstMoving;
+
+        /** As in Machine. */
+        private final boolean _jumpable, _packable, _tabled;
+
+        /** The machine's plugboard, which MachineConfig.plugboard shares
+         *  among all machines set up with the same cycles. */
+        private final Permutation _plugBoard;
+
+        /** As in Machine. */
+        private final byte[] _plugBytes;
+
+        /** Rotor settings, indexed by slot. */
+        private final int[] _settings;
+
+        /** Rotor settings when last set by setRotors. */
+        private final int[] _origin;
+
+        /** Keystrokes since the rotors were set. */
+        private final long _position;
+
+    }
+
+    /** Shift of DOUBLE_STEP. */
+    private static final int DOUBLE_SHIFT = 16;
+
+    /** Added by advanceRotors to its result for each double step. */
+    private static final int DOUBLE_STEP = 1 << DOUBLE_SHIFT;
+
+    /** My configuration. */
+    private final MachineConfig _config;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
-    /** Number of rotors used in setting line. */
-    private int _numRotors;
+    /** Size of _alphabet. */
+    private final int _size;
 
-    /** Number of pawls used in setting line. */
-    private int _pawls;
+    /** Current array of rotors used in setting line.  Never modified
+     *  once set, so that copies may share it (likewise for the other
+     *  per-slot arrays below). */
+    private Rotor[] _usingRotors;
 
-    /** ArrayList of rotors in config file. */
-    private ArrayList<Rotor> _allRotors;
+    /** Forward conversion tables of _usingRotors, indexed by slot. */
+    private int[][] _forward;
 
-    /** Current array of rotors used in setting line. */
-    private Rotor[] _usingRotors;
+    /** Backward conversion tables of _usingRotors, indexed by slot. */
+    private int[][] _backward;
+
+    /** If my alphabet is a ByteAlphabet, _forward and _backward as
+     *  bytes, and otherwise null. */
+    private byte[][] _forwardBytes, _backwardBytes;
+
+    /** If my alphabet is a ByteAlphabet, my plugboard's permutation as
+     *  bytes. */
+    private byte[] _plugBytes;
+
+    /** _notches[i][k] is true iff the rotor in slot I has a notch at
+     *  setting K. */
+    private boolean[][] _notches;
+
+    /** _rotates[i] is true iff the rotor in slot I has a pawl. */
+    private boolean[] _rotates;
 
     /** _plugboard permutation used. */
     private Permutation _plugBoard;
 
+    /** Slot of my leftmost rotor with a pawl. */
+    private int _firstMoving;
+
+    /** True iff advance may compute settings directly rather than by
+     *  stepping. */
+    private boolean _jumpable;
+
+    /** True iff all my rotors have conversion tables in _forward and
+     *  _backward.  Otherwise, passThrough uses their permutations. */
+    private boolean _tabled;
+
+    /** My rotor positions. */
+    private MachineState _state;
+
+    /** Settings of my rotors when last set by setRotors. */
+    private int[] _origin;
+
+    /** True iff all combinations of settings of my rotors can be packed
+     *  into one long value. */
+    private boolean _packable;
+
+    /** Composite permutations keyed by packed rotor settings, or null if
+     *  not caching them.  Used only by convert(int). */
+    private CompositeCache _composites;
+
+    /** Rotor steps (and double steps) made by my own rotors and not yet
+     *  added to the global metrics, which is done at the end of each
+     *  conversion of several characters. */
+    private long _steps, _doubleSteps;
+
 }
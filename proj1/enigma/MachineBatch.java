@@ -0,0 +1,165 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Many copies of one set-up Machine, differing only in their rotor
+ *  positions, that convert in lockstep: each keystroke advances every
+ *  copy and passes the same input character through all of them.  Rotor
+ *  settings are held slot by slot, each slot's settings for all copies
+ *  in one array, so that each step of the conversion is one simple loop
+ *  over the copies (lanes), which the JIT compiler may unroll or
+ *  vectorize.  Every lane converts exactly as Machine.convert(int)
+ *  would from the same position.
+ *  @author Kushal Singh
+ */
+class MachineBatch {
+
+    /** A batch of LANES machines with alphabet size SIZE, rotor tables
+     *  FORWARD and BACKWARD, notches NOTCHES and pawls ROTATES, indexed by
+     *  slot as in Machine, and plugboard table PLUGBOARD.  All lanes start
+     *  with every rotor at setting 0. */
+    MachineBatch(int lanes, int size, int[][] forward, int[][] backward,
+                 boolean[][] notches, boolean[] rotates, int[] plugboard) {
+        if (lanes < 1) {
+            throw error("a batch needs at least one machine");
+        }
+        _lanes = lanes;
+        _size = size;
+        _forward = forward;
+        _backward = backward;
+        _notches = notches;
+        _rotates = rotates;
+        _plugboard = plugboard;
+        _settings = new int[forward.length][lanes];
+        _positions = new long[lanes];
+        _index = new int[lanes];
+    }
+
+    /** Return the number of machines in the batch. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Set the rotor positions of lane LANE to those of STATE. */
+    void load(int lane, MachineState state) {
+        int[] settings = state.settings();
+        for (int i = 0; i < _settings.length; i += 1) {
+            _settings[i][lane] = settings[i];
+        }
+        _positions[lane] = state.position();
+    }
+
+    /** Set STATE to the rotor positions of lane LANE. */
+    void store(int lane, MachineState state) {
+        int[] settings = state.settings();
+        for (int i = 0; i < _settings.length; i += 1) {
+            settings[i] = _settings[i][lane];
+        }
+        state.setPosition(_positions[lane]);
+    }
+
+    /** Set the setting of the rotor in slot SLOT of lane LANE to
+     *  SETTING. */
+    void setSetting(int lane, int slot, int setting) {
+        _settings[slot][lane] = setting;
+    }
+
+    /** Return the setting of the rotor in slot SLOT of lane LANE. */
+    int setting(int lane, int slot) {
+        return _settings[slot][lane];
+    }
+
+    /** Advance every lane, then set OUT[L] to the result of converting
+     *  the character C (an index in the alphabet) in lane L, for each
+     *  lane L. */
+    void convert(int c, int[] out) {
+        advanceRotors();
+        int[] index = _index;
+        int start = _plugboard[c];
+        for (int l = 0; l < _lanes; l += 1) {
+            index[l] = start;
+        }
+        for (int i = _settings.length - 1; i >= 0; i -= 1) {
+            int[] table = _forward[i];
+            int[] settings = _settings[i];
+            for (int l = 0; l < _lanes; l += 1) {
+                index[l] = table[settings[l] * _size + index[l]];
+            }
+        }
+        for (int i = 1; i < _settings.length; i += 1) {
+            int[] table = _backward[i];
+            int[] settings = _settings[i];
+            for (int l = 0; l < _lanes; l += 1) {
+                index[l] = table[settings[l] * _size + index[l]];
+            }
+        }
+        for (int l = 0; l < _lanes; l += 1) {
+            out[l] = _plugboard[index[l]];
+        }
+    }
+
+    /** Advance the rotors of every lane as for one keystroke, by the
+     *  rules of Machine, deciding slot by slot from left to right so that
+     *  each decision sees the notches as they were before the
+     *  keystroke. */
+    private void advanceRotors() {
+        int last = _settings.length - 1;
+        for (int i = 0; i <= last; i += 1) {
+            if (!_rotates[i]) {
+                continue;
+            }
+            int[] settings = _settings[i];
+            if (i == last) {
+                for (int l = 0; l < _lanes; l += 1) {
+                    settings[l] = settings[l] + 1 == _size ? 0
+                        : settings[l] + 1;
+                }
+                continue;
+            }
+            int[] right = _settings[i + 1];
+            boolean[] rightNotches = _notches[i + 1];
+            boolean[] notches = _notches[i];
+            boolean doubles = i > 0 && _rotates[i - 1];
+            for (int l = 0; l < _lanes; l += 1) {
+                if (rightNotches[right[l]]
+                    || doubles && notches[settings[l]]) {
+                    settings[l] = settings[l] + 1 == _size ? 0
+                        : settings[l] + 1;
+                }
+            }
+        }
+        for (int l = 0; l < _lanes; l += 1) {
+            _positions[l] += 1;
+        }
+    }
+
+    /** Number of machines. */
+    private final int _lanes;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Forward and backward conversion tables, indexed by slot, shared
+     *  with the Machine I was made from. */
+    private final int[][] _forward, _backward;
+
+    /** _notches[i][k] is true iff the rotor in slot I has a notch at
+     *  setting K. */
+    private final boolean[][] _notches;
+
+    /** _rotates[i] is true iff the rotor in slot I has a pawl. */
+    private final boolean[] _rotates;
+
+    /** The plugboard, as a table. */
+    private final int[] _plugboard;
+
+    /** _settings[i][l] is the setting of the rotor in slot I of lane L. */
+    private final int[][] _settings;
+
+    /** Keystrokes since each lane's rotors were set. */
+    private final long[] _positions;
+
+    /** Scratch space for the characters passing through each lane. */
+    private final int[] _index;
+
+}
@@ -0,0 +1,156 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The fixed description of an Enigma machine, as given by a configuration
+ *  file: its alphabet, its numbers of rotor slots and pawls, and the
+ *  rotors available to it.  A MachineConfig never changes, and Machines
+ *  never change the rotors it holds, so one configuration may be shared
+ *  by any number of Machines in any number of threads.
+ *  @author Kushal Singh
+ */
+class MachineConfig {
+
+    /** A configuration with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
+     *  available rotors, which must have distinct names. */
+    MachineConfig(Alphabet alpha, int numRotors, int pawls,
+                  Collection<Rotor> allRotors) {
+        if (numRotors <= 1) {
+            throw error("need at least 2 rotor slots");
+        }
+        if (pawls < 0 || pawls >= numRotors) {
+            throw error("need between 0 and %d pawls", numRotors - 1);
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _allRotors =
+            Collections.unmodifiableList(new ArrayList<Rotor>(allRotors));
+        _registry = new HashMap<>();
+        for (Rotor r : _allRotors) {
+            if (_registry.put(key(r.name()), r) != null) {
+                throw error("rotor %s defined twice", r.name());
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls (and thus rotating rotors) I have. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return all my rotors, in the order given. */
+    List<Rotor> rotors() {
+        return _allRotors;
+    }
+
+    /** Return my rotor named NAME, ignoring case, or null if there is
+     *  none. */
+    Rotor rotor(String name) {
+        return _registry.get(key(name));
+    }
+
+    /** Return the plugboard given by CYCLES, written as in a setting line
+     *  with blanks removed (and so, for a byte alphabet, with each symbol
+     *  a pair of hexadecimal digits).  Plugboards are compiled once and
+     *  then shared, since setting lines tend to repeat a few of them. */
+    Permutation plugboard(String cycles) {
+        Permutation result = _plugboards.get(cycles);
+        if (result == null) {
+            if (_alphabet instanceof ByteAlphabet) {
+                result = ConfigParser.permutation(cycles, _alphabet);
+            } else {
+                result = new Permutation(cycles, _alphabet);
+            }
+            if (_plugboards.size() >= MAX_PLUGBOARDS) {
+                _plugboards.clear();
+            }
+            _plugboards.put(cycles, result);
+        }
+        return result;
+    }
+
+    /** Return the names of the rotors in every way of filling my slots
+     *  that Machine.insertRotors accepts: a reflector first, rotors with
+     *  pawls in the rightmost slots, non-moving rotors between, and no
+     *  rotor twice. */
+    List<String[]> rotorOrders() {
+        ArrayList<String[]> orders = new ArrayList<>();
+        addOrders(new String[_numRotors], 0, orders);
+        return orders;
+    }
+
+    /** Add to ORDERS every way of filling ORDER[SLOT ..] as for
+     *  rotorOrders, given ORDER[0 .. SLOT-1]. */
+    private void addOrders(String[] order, int slot, List<String[]> orders) {
+        if (slot == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        int firstMoving = order.length - _pawls;
+        for (Rotor r : _allRotors) {
+            boolean fits;
+            if (slot == 0) {
+                fits = r.reflecting();
+            } else if (slot < firstMoving) {
+                fits = !r.rotates() && !r.reflecting();
+            } else {
+                fits = r.rotates();
+            }
+            for (int i = 0; fits && i < slot; i += 1) {
+                fits = !order[i].equals(r.name());
+            }
+            if (fits) {
+                order[slot] = r.name();
+                addOrders(order, slot + 1, orders);
+            }
+        }
+    }
+
+    /** Return the key of rotor name NAME in _registry, which is the same
+     *  for names differing only in case. */
+    private static String key(String name) {
+        return name.toUpperCase();
+    }
+
+    /** Largest number of plugboards remembered by plugboard. */
+    static final int MAX_PLUGBOARDS = 1 << 12;
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** All available rotors. */
+    private final List<Rotor> _allRotors;
+
+    /** All available rotors, keyed by their names as given by key. */
+    private final HashMap<String, Rotor> _registry;
+
+    /** Plugboards returned by plugboard, keyed by their cycles. */
+    private final ConcurrentHashMap<String, Permutation> _plugboards =
+        new ConcurrentHashMap<>();
+
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The rotor positions of a Machine: the only part of a machine that
+ *  changes as it converts characters.  A Machine keeps one of these for
+ *  itself, but several threads may also share one set-up Machine, each
+ *  converting with its own MachineState.
+ *  @author Kushal Singh
+ */
+class MachineState {
+
+    /** A state for a machine with NUMROTORS slots, with all rotors at
+     *  their 0 setting. */
+    MachineState(int numRotors) {
+        _settings = new int[numRotors];
+    }
+
+    /** A copy of STATE. */
+    MachineState(MachineState state) {
+        _settings = state._settings.clone();
+        _position = state._position;
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Return the settings of all my rotors, indexed by slot.  The
+     *  result is my own array, so changes to it change me. */
+    int[] settings() {
+        return _settings;
+    }
+
+    /** Return the number of keystrokes since my rotors were set. */
+    long position() {
+        return _position;
+    }
+
+    /** Set position() to POSITION. */
+    void setPosition(long position) {
+        _position = position;
+    }
+
+    /** Copy the settings and position of STATE into me. */
+    void copyFrom(MachineState state) {
+        System.arraycopy(state._settings, 0, _settings, 0, _settings.length);
+        _position = state._position;
+    }
+
+    /** Return my settings as one number, whose base-SIZE digits, least
+     *  significant first, are the settings of slots 0, 1, ..., where
+     *  SIZE is the size of my machine's alphabet. */
+    long pack(int size) {
+        long packed = 0;
+        try {
+            for (int i = _settings.length - 1; i >= 0; i -= 1) {
+                packed = Math.addExact(Math.multiplyExact(packed, size),
+                                       _settings[i]);
+            }
+        } catch (ArithmeticException excp) {
+            throw error("too many rotor positions to pack");
+        }
+        return packed;
+    }
+
+    /** Set my settings from PACKED, as returned by pack(SIZE). */
+    void unpack(long packed, int size) {
+        if (packed < 0) {
+            throw error("bad packed rotor positions");
+        }
+        for (int i = 0; i < _settings.length; i += 1) {
+            _settings[i] = (int) (packed % size);
+            packed /= size;
+        }
+        if (packed != 0) {
+            throw error("bad packed rotor positions");
+        }
+    }
+
+    /** Rotor settings, indexed by slot. */
+    private final int[] _settings;
+
+    /** Keystrokes since the rotors were set. */
+    private long _position;
+
+}
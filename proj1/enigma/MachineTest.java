@@ -9,6 +9,7 @@ import org.junit.rules.Timeout;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.lang.management.ManagementFactory;
 import enigma.Machine;
 import enigma.Rotor;
 import enigma.Alphabet;
@@ -193,14 +194,14 @@ public class MachineTest {
     @Test
     public void setRotors1() throws Exception {
         MakeMachine();
-        String _settings = "";
+        String _settings = "A";
         test_Mach1.setRotors(_settings);
     }
 
     @Test
     public void setRotors2() throws Exception {
         MakeMachine();
-        String _settings = "F";
+        String _settings = "BF";
         test_Mach2.setRotors(_settings);
     }
     //SETROTORS END
@@ -274,8 +275,8 @@ public class MachineTest {
     public void convert3() throws Exception {
         MakeMachine();
         int char1, char2;
-        char1 = 'H';
-        char2 = 'E';
+        char1 = _alpha.toInt('H');
+        char2 = _alpha.toInt('E');
         int res_char1 = test_Mach0.convert(char1);
         int res_char2 = test_Mach0.convert(char2);
         assertEquals("Machine 0" + " wrong Converted char1 (H)", ('I' - 'A'), res_char1);
@@ -293,6 +294,7 @@ public class MachineTest {
         str1 = "HELLO WORLD";
         str2 = "ILBDA AMTAZ";
         String res_str1 = test_Mach0.convert(str1);
+        test_Mach0.setRotors("AAAA");
         String res_str2 = test_Mach0.convert(str2);
         assertEquals("Machine 0" + " wrong Converted str1 (\"HELLO WORLD\")", "ILBDA AMTAZ", res_str1);
         assertEquals("Machine 0" + " wrong Converted str2 (\"ILBDA AMTAZ\")", "HELLO WORLD", res_str2);
@@ -311,7 +313,659 @@ public class MachineTest {
         //assertEquals("Machine 0" + " wrong Converted str2 (\"ILBDA AMTAZ\")", "HELLO WORLD", res_str2);
     }
 
-    public static ArrayList<Rotor> _rotors = new ArrayList<Rotor>();
+    /** Notches of the naval rotors in NAVALA. */
+    private static final String[][] NAVAL_NOTCHES = {
+        {"I", "Q"}, {"II", "E"}, {"III", "V"}, {"IV", "J"}, {"V", "Z"},
+        {"VI", "ZM"}, {"VII", "ZM"}, {"VIII", "ZM"}
+    };
+
+    /** Return a fresh 5-rotor, 3-pawl machine holding all the naval
+     *  rotors, with ROTORS inserted, set to SETTING, with PLUGBOARD. */
+    private static Machine navalMachine(String[] rotors, String setting,
+                                        String plugboard) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (String[] rotor : NAVAL_NOTCHES) {
+            all.add(setRotor(rotor[0], NAVALA, rotor[1]));
+        }
+        all.add(setRotorFIXED("Beta", NAVALA));
+        all.add(setRotorFIXED("Gamma", NAVALA));
+        all.add(setRotorREFLECTOR("B", NAVALA));
+        all.add(setRotorREFLECTOR("C", NAVALA));
+        Machine m = new Machine(UPPER, 5, 3, all);
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(plugboard, UPPER));
+        return m;
+    }
+
+    /** Return a 5-rotor, 3-pawl configuration holding naval rotors I,
+     *  II, and III, Beta, and reflector B. */
+    private static MachineConfig navalConfig() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(setRotor("I", NAVALA, "Q"));
+        all.add(setRotor("II", NAVALA, "E"));
+        all.add(setRotor("III", NAVALA, "V"));
+        all.add(setRotorFIXED("Beta", NAVALA));
+        all.add(setRotorREFLECTOR("B", NAVALA));
+        return new MachineConfig(UPPER, 5, 3, all);
+    }
+
+    @Test
+    public void convertDoesNotAllocate() {
+        if (!(ManagementFactory.getThreadMXBean()
+              instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean counters =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        Machine m = navalMachine(new String[] {"B", "Beta", "VI", "VII", "V"},
+                                 "AAAZ", "(AQ) (EP)");
+        final int n = 1000000;
+        int sink = 0;
+        for (int i = 0; i < n; i += 1) {
+            sink += m.convert(i % 26);
+        }
+        long before = counters.getThreadAllocatedBytes(id);
+        for (int i = 0; i < n; i += 1) {
+            sink += m.convert(i % 26);
+        }
+        long allocated = counters.getThreadAllocatedBytes(id) - before;
+        assertTrue(String.format("allocated %d bytes over %d characters (%d)",
+                                 allocated, n, sink),
+                   allocated < n);
+    }
+
+    @Test
+    public void convertBulk() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine bulk = navalMachine(rotors, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        Machine single = navalMachine(rotors, "AXLE",
+                                      "(HQ) (EX) (IP) (TR) (BY)");
+        char[] src = "xxFROM HIS SHOULDERxx".toCharArray();
+        char[] dst = new char[src.length];
+        bulk.convert(src, 2, src.length - 4, dst);
+        assertEquals("bulk conversion", "QVPQ SOK OILPUBKJ",
+                     new String(dst, 0, src.length - 4));
+        single.convert("FROM HIS SHOULDER");
+        for (int i = 0; i < 1000; i += 1) {
+            src[i % src.length] = (char) ('A' + i % 26);
+            dst[0] = src[i % src.length];
+            bulk.convert(dst, 0, 1, dst);
+            assertEquals("character " + i,
+                         single.convert(src[i % src.length] - 'A'),
+                         dst[0] - 'A');
+        }
+    }
+
+    @Test
+    public void advanceMatchesStepping() {
+        String[][] setups = {
+            {"B", "Beta", "I", "II", "III", "AADU"},
+            {"C", "Gamma", "VI", "VII", "VIII", "ZLYZ"},
+            {"B", "Beta", "V", "VI", "II", "QZLD"},
+        };
+        for (String[] setup : setups) {
+            String[] rotors = java.util.Arrays.copyOf(setup, 5);
+            Machine stepped = navalMachine(rotors, setup[5], "(AQ) (EP)");
+            Machine jumped = navalMachine(rotors, setup[5], "(AQ) (EP)");
+            long total = 0;
+            for (int n : new int[] {0, 1, 2, 25, 676, 17575, 100000}) {
+                for (int i = 0; i < n; i += 1) {
+                    stepped.convert(0);
+                }
+                jumped.advance(n);
+                total += n;
+                assertEquals("position", total, jumped.position());
+                assertEquals(msg(setup[5], "after %d", total),
+                             stepped.convert("HELLOWORLD"),
+                             jumped.convert("HELLOWORLD"));
+                total += 10;
+            }
+            Machine seeker = navalMachine(rotors, setup[5], "(AQ) (EP)");
+            seeker.seek(total - 10);
+            jumped.seek(total - 10);
+            assertEquals("seek", seeker.convert("HELLOWORLD"),
+                         jumped.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void advanceWithoutJumping() {
+        String[][] setups = {
+            {"B", "Beta", "I", "II", "III", "AADU"},
+            {"B", "I", "Beta", "II", "III", "AQDU"},
+        };
+        for (String[] setup : setups) {
+            String[] rotors = java.util.Arrays.copyOf(setup, 5);
+            Machine[] machines = new Machine[2];
+            for (int k = 0; k < 2; k += 1) {
+                ArrayList<Rotor> all = new ArrayList<>();
+                all.add(setRotor("I", NAVALA, "QR"));
+                all.add(setRotor("II", NAVALA, "E"));
+                all.add(setRotor("III", NAVALA, "V"));
+                all.add(setRotorFIXED("Beta", NAVALA));
+                all.add(setRotorREFLECTOR("B", NAVALA));
+                machines[k] = new Machine(UPPER, 5, 3, all);
+                machines[k].insertRotors(rotors);
+                machines[k].setRotors(setup[5]);
+                machines[k].setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+            }
+            Machine stepped = machines[0], advanced = machines[1];
+            assertFalse("not jumpable", advanced.jumpable());
+            int n = 3_000_000;
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            advanced.advance(n);
+            assertEquals("position", n, advanced.position());
+            assertEquals(msg(setup[5], "after %d", n),
+                         stepped.convert("HELLOWORLD"),
+                         advanced.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void convertInParallel() {
+        String[] rotors = {"C", "Gamma", "VI", "VII", "VIII"};
+        Machine serial = navalMachine(rotors, "ZLYZ", "(AQ) (EP)");
+        Machine parallel = navalMachine(rotors, "ZLYZ", "(AQ) (EP)");
+        char[] msg = new char[5 * ConvertTask.GRAIN + 17];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = (char) ('A' + (i * 7 + i / 26) % 26);
+        }
+        char[] expected = new char[msg.length];
+        serial.convert(msg, 0, msg.length, expected);
+        new java.util.concurrent.ForkJoinPool(3).invoke(
+            new ConvertTask(parallel, msg, 0, msg.length));
+        assertArrayEquals("parallel conversion", expected, msg);
+        assertEquals("machine unchanged", 0, parallel.position());
+    }
+
+    @Test
+    public void sharedConfigAndStates() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine m = navalMachine(rotors, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        Machine other = new Machine(m.config());
+        other.insertRotors(new String[] {"C", "Gamma", "I", "II", "III"});
+        other.setRotors("ZZZZ");
+        other.setPlugboard(new Permutation("", UPPER));
+        other.convert("HELLOWORLD");
+
+        MachineState s1 = new MachineState(m.state());
+        MachineState s2 = new MachineState(m.state());
+        String msg = "FROMHISSHOULDER";
+        StringBuilder out1 = new StringBuilder(),
+            out2 = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            out1.append((char) ('A' + m.convert(s1, msg.charAt(i) - 'A')));
+            out2.append((char) ('A' + m.convert(s2, msg.charAt(i) - 'A')));
+        }
+        assertEquals("state 1", "QVPQSOKOILPUBKJ", out1.toString());
+        assertEquals("state 2", "QVPQSOKOILPUBKJ", out2.toString());
+        assertEquals("machine's own state", 0, m.position());
+        assertEquals("own conversion", "QVPQSOKOILPUBKJ", m.convert(msg));
+    }
+
+    @Test
+    public void compositeCache() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        Machine plain = navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)");
+        Machine cached = navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)");
+        cached.cacheComposites(100);
+        for (int round = 0; round < 3; round += 1) {
+            for (int i = 0; i < 500; i += 1) {
+                assertEquals(msg("cached", "round %d, char %d", round, i),
+                             plain.convert(i % 26), cached.convert(i % 26));
+            }
+            plain.setRotors("AXLE");
+            cached.setRotors("AXLE");
+        }
+        CompositeCache cache = cached.composites();
+        assertEquals("capacity", 100, cache.count());
+        assertEquals("lookups", 1500, cache.hits() + cache.misses());
+
+        cached.cacheComposites(1000);
+        cached.setRotors("AXLE");
+        for (int i = 0; i < 500; i += 1) {
+            cached.convert(i % 26);
+        }
+        cached.setRotors("AXLE");
+        for (int i = 0; i < 500; i += 1) {
+            cached.convert(i % 26);
+        }
+        assertEquals("hits on repeated key", 500, cached.composites().hits());
+
+        cached.cacheComposites(1000);
+        for (int msg = 0; msg < 3; msg += 1) {
+            cached.insertRotors(rotors);
+            cached.setRotors("AXLE");
+            cached.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+            for (int i = 0; i < 500; i += 1) {
+                assertEquals(msg("cached", "message %d, char %d", msg, i),
+                             plain.convert(i % 26), cached.convert(i % 26));
+            }
+            plain.setRotors("AXLE");
+        }
+        assertEquals("hits on repeated setting line", 1000,
+                     cached.composites().hits());
+        cached.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        assertEquals("cleared on new plugboard", 0,
+                     cached.composites().count());
+    }
+
+    @Test
+    public void keystreamCache() {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        String setting = "* B Beta III IV I AXLE (HQ) (EX) (IP)";
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        Machine m = navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)");
+        EnigmaMetrics metrics = EnigmaMetrics.global();
+        long steps = metrics.getRotorSteps();
+        String expected = m.convert(msg);
+        steps = metrics.getRotorSteps() - steps;
+
+        KeystreamCache cache = new KeystreamCache(10, 1 << 20);
+        for (int round = 0; round < 2; round += 1) {
+            long before = metrics.getRotorSteps();
+            m.setRotors("AXLE");
+            Keystream ks = cache.get(setting, m);
+            assertEquals("no rotor motion", 0, m.position());
+            char[] buf = msg.toCharArray();
+            int k = ks.convert(buf, 0, buf.length);
+            assertEquals("keystream length", 10, k);
+            m.seek(ks.position());
+            m.convert(buf, k, buf.length - k, buf, k);
+            assertEquals("keystream conversion", expected, new String(buf));
+            assertEquals("rotor steps", steps,
+                         metrics.getRotorSteps() - before);
+        }
+        assertEquals("hits", 1, cache.hits());
+        assertEquals("misses", 1, cache.misses());
+        assertNotNull("normalized key",
+                      cache.get(" *  B Beta III\tIV I AXLE (HQ) (EX) (IP) ", m));
+        assertEquals("hits", 2, cache.hits());
+
+        int entry = 4 * 10 * 26 + 8 * 11;
+        KeystreamCache small = new KeystreamCache(10, entry);
+        small.get(setting, m);
+        small.get(setting + " (TR)", m);
+        assertEquals("evicted", 1, small.count());
+        assertEquals("bytes", entry, small.bytes());
+    }
+
+    @Test
+    public void parsedAndCompiledConfigs() throws java.io.IOException {
+        StringBuilder text = new StringBuilder("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+                                               + " 5 3\n");
+        for (String[] rotor : NAVAL_NOTCHES) {
+            text.append(String.format("%s M%s %s%n", rotor[0], rotor[1],
+                                      NAVALA.get(rotor[0])));
+        }
+        text.append("Beta N " + NAVALA.get("Beta") + "\n");
+        text.append("Gamma N\n  " + NAVALA.get("Gamma") + "\n");
+        text.append("B R " + NAVALA.get("B") + " C R " + NAVALA.get("C"));
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected =
+            navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)").convert(msg);
+
+        MachineConfig parsed = new ConfigParser(text.toString()).parse();
+        assertEquals("rotors parsed", 12, parsed.rotors().size());
+        java.io.File file = java.io.File.createTempFile("enigma", ".bin");
+        try {
+            CompiledConfig.write(parsed, file);
+            assertTrue("compiled", CompiledConfig.isCompiled(file));
+            MachineConfig loaded = CompiledConfig.read(file);
+            for (MachineConfig config : new MachineConfig[] {parsed, loaded}) {
+                Machine m = new Machine(config);
+                m.insertRotors(rotors);
+                m.setRotors("AXLE");
+                m.setPlugboard(new Permutation("(HQ) (EX) (IP)",
+                                               config.alphabet()));
+                assertEquals("conversion", expected, m.convert(msg));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void byteAlphabet() {
+        String config = "00-FF 3 1\n"
+            + "R R (00 FF) (01 FE) (02 FD) (28 29)\n"
+            + "F N (00 01 02 03) (41 61)\n"
+            + "M M0080 (00 10 20 30 40 50 60 70 80 90 A0 B0 C0 D0 E0 F0)\n";
+        Machine ints = new Machine(new ConfigParser(config).parse());
+        Machine bytes = ints.copy();
+        for (Machine m : new Machine[] {ints, bytes}) {
+            m.insertRotors(new String[] {"R", "F", "M"});
+            m.setRotors(ByteAlphabet.fromHex("0A7F"));
+            m.setPlugboard(ConfigParser.permutation("(0001) (2829)",
+                                                    m.config().alphabet()));
+        }
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 7);
+        }
+        java.nio.ByteBuffer out = java.nio.ByteBuffer.allocate(data.length);
+        bytes.convert(java.nio.ByteBuffer.wrap(data), out);
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals("byte " + i, ints.convert(data[i] & 0xff),
+                         out.get(i) & 0xff);
+        }
+        assertEquals("position", data.length, bytes.position());
+    }
+
+    @Test
+    public void largeAlphabet() {
+        int n = 50000;
+        char[] chars = new char[n];
+        int[] reflect = new int[n];
+        int[] shift = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            chars[k] = (char) (0x100 + k);
+            reflect[k] = k ^ 1;
+            shift[k] = (k * 7 + 3) % n;
+        }
+        Alphabet alpha = new Alphabet(new String(chars));
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation(reflect, alpha)));
+        all.add(new MovingRotor("M", new Permutation(shift, alpha),
+                                String.valueOf(chars[5])));
+        all.add(new MovingRotor("N", new Permutation(shift, alpha),
+                                String.valueOf(chars[n - 1])));
+        Machine m = new Machine(alpha, 3, 2, all);
+        assertFalse("no tables", all.get(1).tabled());
+        m.insertRotors(new String[] {"R", "M", "N"});
+        m.setRotors(new String(chars, n - 3, 2));
+        m.setPlugboard(new Permutation("", alpha));
+        String msg = new String(chars, 1000, 20) + new String(chars, 0, 20);
+        String cipher = m.convert(msg);
+        m.setRotors(new String(chars, n - 3, 2));
+        assertEquals("reciprocal", msg, m.convert(cipher));
+
+        Rotor rotor = all.get(1);
+        for (int s = 0; s < n; s += 997) {
+            rotor.set(s);
+            for (int p = 0; p < n; p += 991) {
+                assertEquals("backward inverts forward", p,
+                             rotor.convertBackward(rotor.convertForward(p)));
+            }
+        }
+    }
+
+    @Test
+    public void compiledByteConfig() throws java.io.IOException {
+        MachineConfig parsed = new ConfigParser("00-FF 3 1\n"
+            + "R R (00 FF) (01 FE) (02 FD) (28 29)\n"
+            + "F N (00 01 02 03) (41 61)\n"
+            + "M M0080 (00 10 20 30 40 50 60 70 80 90 A0 B0 C0 D0 E0 F0)\n")
+            .parse();
+        java.io.File file = java.io.File.createTempFile("enigma", ".bin");
+        try {
+            CompiledConfig.write(parsed, file);
+            MachineConfig loaded = CompiledConfig.read(file);
+            assertTrue("byte alphabet",
+                       loaded.alphabet() instanceof ByteAlphabet);
+            String out = null;
+            for (MachineConfig config : new MachineConfig[] {parsed, loaded}) {
+                Machine m = new Machine(config);
+                m.insertRotors(new String[] {"R", "F", "M"});
+                m.setRotors(ByteAlphabet.fromHex("0A7F"));
+                m.setPlugboard(config.plugboard("(0001) (2829)"));
+                String converted = m.convert("\u0000\u0041\u00ff\u0028");
+                assertTrue("same conversion",
+                           out == null || out.equals(converted));
+                out = converted;
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void streamAdapters() throws java.io.IOException {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        String plain = "From his shoulder, Hiawatha\nTook the camera of rosewood.\n";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i += 1) {
+            text.append(plain);
+        }
+
+        java.io.StringWriter cipher = new java.io.StringWriter();
+        try (java.io.Writer w = new EnigmaWriter(cipher,
+                 navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)"))) {
+            w.write(text.toString());
+        }
+        assertEquals("only letters change",
+                     text.toString().replaceAll("[A-Za-z]", "?"),
+                     cipher.toString().replaceAll("[A-Z]", "?"));
+        assertFalse("lower case is enciphered",
+                    cipher.toString().matches("(?s).*[a-z].*"));
+        java.io.Reader r = new EnigmaReader(
+            new java.io.StringReader(cipher.toString()),
+            navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)"));
+        StringBuilder decoded = new StringBuilder();
+        char[] buf = new char[100];
+        for (int n = r.read(buf); n >= 0; n = r.read(buf)) {
+            decoded.append(buf, 0, n);
+        }
+        assertEquals("character round trip", text.toString().toUpperCase(),
+                     decoded.toString());
+
+        byte[] bytes = text.toString().getBytes("ISO-8859-1");
+        java.io.ByteArrayOutputStream sink =
+            new java.io.ByteArrayOutputStream();
+        try (java.io.OutputStream out = new EnigmaOutputStream(sink,
+                 navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)"))) {
+            out.write(bytes);
+        }
+        assertEquals("streams agree with writers", cipher.toString(),
+                     sink.toString("ISO-8859-1"));
+        java.io.InputStream in = new EnigmaInputStream(
+            new java.io.ByteArrayInputStream(sink.toByteArray()),
+            navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)"));
+        byte[] upper = text.toString().toUpperCase().getBytes("ISO-8859-1");
+        for (int i = 0; i < upper.length; i += 1) {
+            assertEquals("byte round trip", upper[i], (byte) in.read());
+        }
+        assertEquals("negative byte skip", 0, in.skip(-1));
+        assertEquals("end of stream", -1, in.read());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readerNegativeSkip() throws java.io.IOException {
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        java.io.Reader r = new EnigmaReader(
+            new java.io.StringReader("HIAWATHA"),
+            navalMachine(rotors, "AXLE", "(HQ) (EX) (IP)"));
+        r.skip(-1);
+    }
+
+    @Test
+    public void cribSearch() {
+        MachineConfig config = navalConfig();
+        Machine m = new Machine(config);
+        m.insertRotors(new String[] {"B", "Beta", "II", "I", "III"});
+        m.setRotors("QRSA");
+        m.setPlugboard(new Permutation("(AB)", UPPER));
+        String cipher = m.convert("THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG");
+
+        CribSearch search =
+            new CribSearch(config, new Permutation("(AB)", UPPER),
+                           CribSearch.indices(cipher, UPPER),
+                           CribSearch.indices("quick brown fox", UPPER), 3);
+        java.util.concurrent.ForkJoinPool pool =
+            new java.util.concurrent.ForkJoinPool(2);
+        try {
+            assertEquals("settings found",
+                         java.util.Arrays.asList("* B Beta II I III QRSA"),
+                         search.search(pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals("orders", 6, search.orders());
+        assertEquals("candidates", 6 * 26 * 26 * 26 * 26, search.candidates());
+    }
+
+    @Test
+    public void ciphertextSearch() {
+        BestHeap best = new BestHeap(3);
+        double[] scores = {0.5, 2.0, 1.0, 3.0, 0.25, 2.5};
+        for (int i = 0; i < scores.length; i += 1) {
+            best.offer(scores[i], i, 10 * i);
+        }
+        best.sort();
+        assertEquals("kept", 3, best.size());
+        assertEquals("best order", 3, best.order(0));
+        assertEquals("second position", 50, best.position(1));
+        assertEquals("third score", 2.0, best.score(2), 0);
+
+        MachineConfig config = navalConfig();
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOGANDKEEPSRUNNING";
+        Machine m = new Machine(config);
+        m.insertRotors(new String[] {"B", "Beta", "II", "I", "III"});
+        m.setRotors("QRSA");
+        m.setPlugboard(new Permutation("(KW)", UPPER));
+        String cipher = m.convert(plain);
+
+        int[] text = CribSearch.indices(plain, UPPER);
+        CiphertextSearch search =
+            new CiphertextSearch(config, CribSearch.indices(cipher, UPPER),
+                                 1, 1, new NgramScorer(UPPER, 2, text));
+        int order = 0;
+        while (!java.util.Arrays.equals(config.rotorOrders().get(order),
+                                        new String[] {"B", "Beta", "II",
+                                                      "I", "III"})) {
+            order += 1;
+        }
+        CiphertextSearch.Result r =
+            search.climb(order, ((16 * 26 + 17) * 26 + 18) * 26);
+        assertEquals("setting", "* B Beta II I III QRSA (KW)", r.setting());
+        assertEquals("decryption", plain, r.plain());
+    }
+
+    @Test
+    public void machineBatch() {
+        MachineConfig config = navalConfig();
+        Machine m = new Machine(config);
+        m.insertRotors(new String[] {"B", "Beta", "III", "II", "I"});
+        m.setPlugboard(new Permutation("(AQ) (EP) (TZ)", UPPER));
+        String[] settings = {"AAAA", "ADEQ", "ZZDV", "QEVP", "MKQU"};
+        MachineBatch batch = m.batch(settings.length);
+        for (int l = 0; l < settings.length; l += 1) {
+            m.setRotors(settings[l]);
+            batch.load(l, m.state());
+        }
+        Machine[] single = new Machine[settings.length];
+        for (int l = 0; l < settings.length; l += 1) {
+            single[l] = m.copy();
+            single[l].setRotors(settings[l]);
+        }
+        int[] out = new int[settings.length];
+        for (int k = 0; k < 2000; k += 1) {
+            int c = (k * 7) % 26;
+            batch.convert(c, out);
+            for (int l = 0; l < settings.length; l += 1) {
+                assertEquals("lane " + l + " keystroke " + k,
+                             single[l].convert(c), out[l]);
+            }
+        }
+        MachineState state = new MachineState(5);
+        batch.store(3, state);
+        assertEquals("position", 2000, state.position());
+        assertArrayEquals("settings", single[3].state().settings(),
+                          state.settings());
+    }
+
+    @Test
+    public void rotorRegistry() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(setRotor("I", NAVALA, "Q"));
+        all.add(setRotorFIXED("Beta", NAVALA));
+        all.add(setRotorREFLECTOR("B", NAVALA));
+        MachineConfig config = new MachineConfig(UPPER, 3, 1, all);
+        assertSame("any case", all.get(1), config.rotor("bEtA"));
+        assertNull("missing", config.rotor("II"));
+        Permutation plugs = config.plugboard("(AB)(CD)");
+        assertSame("interned", plugs, config.plugboard("(AB)(CD)"));
+        assertEquals("plugboard", 'D', plugs.permute('C'));
+    }
+
+    @Test
+    public void checkpoint() throws java.io.IOException {
+        Machine m = navalMachine(new String[] {"B", "Beta", "III", "IV", "I"},
+                                 "AXLE", "(HQ) (EX)");
+        m.convert("FROMHISSHOULDERHIAWATHA");
+        java.io.File file = java.io.File.createTempFile("enigma", ".ck");
+        try {
+            new Checkpoint(100, 120, "* B Beta III IV I AXLE (HQ) (EX)", m)
+                .write(file);
+            Checkpoint resumed = Checkpoint.read(file);
+            assertEquals("input", 100, resumed.input());
+            assertEquals("output", 120, resumed.output());
+            Machine n = new Machine(m.config());
+            n.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+            n.setRotors("AXLE");
+            n.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+            resumed.restore(n);
+            assertEquals("position", 23, n.position());
+            assertEquals("resumed", m.convert("TAKEHISBOW"),
+                         n.convert("TAKEHISBOW"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void stepMetrics() {
+        Machine m = new Machine(navalConfig());
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        m.setRotors("AADU");
+        m.setPlugboard(new Permutation("", UPPER));
+        EnigmaMetrics metrics = EnigmaMetrics.global();
+        long steps = metrics.getRotorSteps();
+        long doubles = metrics.getDoubleSteps();
+        m.convert("XYZ");
+        assertEquals("steps", 6, metrics.getRotorSteps() - steps);
+        assertEquals("double steps", 1, metrics.getDoubleSteps() - doubles);
+    }
+
+    @Test
+    public void snapshotRestore() {
+        Machine m = new Machine(navalConfig());
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        m.convert("ABC");
+        Machine.Snapshot snap = m.snapshot();
+        String expected = m.convert("FROMHISSHOULDERHIAWATHA");
+
+        m.insertRotors(new String[] {"B", "Beta", "III", "I", "II"});
+        m.setRotors("QQQQ");
+        m.setPlugboard(new Permutation("", UPPER));
+        m.restore(snap);
+        assertEquals("position", 3, m.position());
+        assertEquals("after restore", expected,
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+        m.restore(snap);
+        assertEquals("restored twice", expected,
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+        m.seek(3);
+        assertEquals("origin restored", expected,
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+
+        Machine other = new Machine(m.config());
+        other.restore(snap);
+        assertArrayEquals(new String[] {"B", "Beta", "I", "II", "III"},
+                          snap.rotors());
+        assertEquals("other machine", expected,
+                     other.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    private ArrayList<Rotor> _rotors = new ArrayList<Rotor>();
 
     public static MovingRotor setRotor(String name, HashMap<String, String> rotors,
                                        String notches) {
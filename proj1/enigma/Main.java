@@ -4,9 +4,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +35,72 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  These arguments may be preceded by options:
+     *    --parallel[=N]  Convert long messages in pieces on N threads
+     *                    (default: one per available processor).  With
+     *                    rotors that cannot be moved ahead directly (a
+     *                    rotor with notches at consecutive settings, or
+     *                    a fixed rotor right of a moving one), messages
+     *                    are converted on one thread instead, since
+     *                    moving those rotors ahead N keystrokes takes
+     *                    time proportional to N.
+     *    --composites=N  Cache the machine's whole permutation at up to N
+     *                    recent rotor positions.
+     *    --keystream[=N] Remember the permutations for the first N
+     *                    (default 4096) keystrokes after each setting line,
+     *                    for reuse when the same line appears again.
+     *    --keystream-memory=M
+     *                    Keep at most M (default 64) megabytes of them.
+     *    --compile=FILE  Instead of converting messages, write the
+     *                    configuration to FILE in compiled form, which
+     *                    may be given as ARGS[0] in later runs.
+     *    --binary        Treat the input as one setting line followed by
+     *                    raw bytes, to be converted without regard to
+     *                    lines or blanks.  The setting line is copied to
+     *                    the output, followed by the converted bytes.  The
+     *                    configuration's alphabet must be 00-FF, whose
+     *                    symbols are written as pairs of hex digits.
+     *    --mapped        Convert the input file, which must be named
+     *                    along with the output file, through memory
+     *                    maps of both, holding no more than a fixed
+     *                    amount of either in memory however large they
+     *                    are.  Each line may be at most 64 megabytes
+     *                    long.
+     *    --checkpoint=FILE
+     *                    With --mapped or --binary, record in FILE how far
+     *                    the conversion has got, after about every 64
+     *                    megabytes of input.  FILE is removed when the
+     *                    conversion is complete.
+     *    --checkpoint-every=M
+     *                    Record a checkpoint after about every M megabytes
+     *                    of input instead.
+     *    --resume        If the FILE of --checkpoint exists, continue the
+     *                    conversion it records instead of starting over.
+     *                    The input and output must be files.  The rotor
+     *                    positions recorded are restored directly, so
+     *                    resuming takes no longer for any rotors.
+     *    --pipeline[=N]  Convert whole messages on N threads (default: one
+     *                    per available processor), while one thread reads
+     *                    messages and another prints results in order.
+     *                    --parallel and --keystream do not apply.
+     *    --serve=ADDRESS Instead of reading messages, accept connections
+     *                    on ADDRESS, either a TCP port on the loopback
+     *                    interface or unix:PATH for a Unix-domain socket.
+     *                    Each client sends a setting line and then any
+     *                    amount of text, which is sent back converted as
+     *                    it arrives; characters outside the alphabet are
+     *                    returned unchanged.  Only ARGS[0] is used.
+     *                    A socket file left by a server that is no
+     *                    longer running is replaced, and the socket file
+     *                    is removed when the server stops.
+     *    --stats[=N]     Print counts of messages, characters and rotor
+     *                    steps, and the time spent setting up and
+     *                    converting, on the standard error every N
+     *                    seconds (default 10) and at the end.
+     *    --jmx           Publish the same counts through JMX, as the
+     *                    MBean enigma:type=Metrics. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,22 +113,101 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        args = parseOptions(args);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = new File(args[0]);
+        if (!_config.isFile()) {
+            throw error("could not open %s", args[0]);
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (_options.containsKey("binary")) {
+            openChannels(args);
+        } else if (_options.containsKey("mapped")) {
+            if (args.length != 3) {
+                throw error("--mapped needs input and output files");
+            }
+            _mappedInput = new File(args[1]);
+            _mappedOutput = new File(args[2]);
         } else {
-            _input = new Scanner(System.in);
+            if (args.length > 1) {
+                _input = getInput(args[1]);
+            } else {
+                _input = new Scanner(System.in);
+            }
+
+            if (args.length > 2) {
+                _output = new MessageWriter(getOutput(args[2]));
+            } else {
+                _output = new MessageWriter(System.out);
+            }
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+        if (_options.containsKey("checkpoint")) {
+            String name = _options.get("checkpoint");
+            if (name == null) {
+                throw error("--checkpoint needs a file name");
+            }
+            if (_byteInput == null && _mappedInput == null) {
+                throw error("--checkpoint needs --mapped or --binary");
+            }
+            _checkpoint = new File(name);
+            _checkpointEvery =
+                (long) intOption("checkpoint-every", CHECKPOINT_MEGABYTES)
+                << 20;
+            if (_checkpointEvery <= 0) {
+                throw error("--checkpoint-every must be positive");
+            }
+        } else if (_options.containsKey("resume")) {
+            throw error("--resume needs --checkpoint");
+        }
+
+        if (_options.containsKey("parallel")) {
+            int threads = intOption("parallel",
+                Runtime.getRuntime().availableProcessors());
+            if (threads < 1) {
+                throw error("--parallel needs at least 1 thread");
+            }
+            _pool = new ForkJoinPool(threads);
+        }
+
+        if (_options.containsKey("keystream")) {
+            _keystreams = new KeystreamCache(
+                intOption("keystream", KEYSTREAM_POSITIONS),
+                (long) intOption("keystream-memory", KEYSTREAM_MEGABYTES)
+                << 20);
+        }
+    }
+
+    /** Record the options at the start of ARGS, each of the form --NAME
+     *  or --NAME=VALUE, in _options, and return the remaining arguments. */
+    private String[] parseOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            int eq = args[k].indexOf('=');
+            if (eq == -1) {
+                _options.put(args[k].substring(2), null);
+            } else {
+                _options.put(args[k].substring(2, eq),
+                             args[k].substring(eq + 1));
+            }
+        }
+        return Arrays.copyOfRange(args, k, args.length);
+    }
+
+    /** Return the value of option NAME as an integer, or DEFAULTVALUE if
+     *  it was given without a value. */
+    private int intOption(String name, int defaultValue) {
+        String value = _options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw error("bad value for --%s: %s", name, value);
         }
     }
 
@@ -64,6 +220,28 @@ public final class Main {
         }
     }
 
+    /** Set _byteInput and _byteOutput to channels for the input and
+     *  output files named in ARGS (see comment on main). */
+    private void openChannels(String[] args) {
+        try {
+            if (args.length > 1) {
+                _byteInput = FileChannel.open(new File(args[1]).toPath());
+            } else {
+                _byteInput = Channels.newChannel(System.in);
+            }
+            if (args.length > 2) {
+                _byteOutput =
+                    FileChannel.open(new File(args[2]).toPath(),
+                                     StandardOpenOption.CREATE,
+                                     StandardOpenOption.WRITE);
+            } else {
+                _byteOutput = Channels.newChannel(System.out);
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", args[args.length - 1]);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -77,109 +255,298 @@ public final class Main {
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        Machine configMach = readConfig();
-        while (_input.hasNextLine()) {
-            String setting = _input.nextLine();
-            String[] strArr = setting.split(" ");
-
-            if (!strArr[0].equals("*") && _input.hasNext()) {
-                setting = _input.nextLine();
-                _output.println();
-            } else if (!strArr[0].equals("*")) {
-                throw new EnigmaException("First line must be settings line.");
+        ScheduledExecutorService reporter = startMetrics();
+        try {
+            MachineConfig config = readConfig();
+            if (_options.containsKey("compile")) {
+                String name = _options.get("compile");
+                if (name == null) {
+                    throw error("--compile needs a file name");
+                }
+                CompiledConfig.write(config, new File(name));
+                return;
             }
-
-            setUp(configMach, setting);
-
-            String mssg = "";
-            while (!_input.hasNext("\\*.*") && _input.hasNextLine()) {
-                if (_input.hasNext("\\*.*")) {
-                    throw new EnigmaException("Improper Format for setting.");
+            if (_options.containsKey("serve")) {
+                String address = _options.get("serve");
+                if (address == null) {
+                    throw error("--serve needs a port or unix:PATH");
                 }
-
-                mssg = _input.nextLine();
-                mssg = mssg.toUpperCase();
-                String[] mssgArr = mssg.split("\\ ");
-                String[] convertedMsgArr = new String[mssgArr.length];
-                for (int i = 0; i < mssgArr.length; i++) {
-                    convertedMsgArr[i] = configMach.convert(mssgArr[i]);
+                new EnigmaServer(this, config).serve(address);
+                return;
+            }
+            Machine configMach = newMachine(config);
+            if (_byteInput != null) {
+                convertBytes(configMach);
+                return;
+            }
+            if (_mappedInput != null) {
+                new MappedConverter(this, _mappedInput, _mappedOutput)
+                    .convert(configMach);
+                return;
+            }
+            if (_options.containsKey("pipeline")) {
+                int workers = intOption("pipeline",
+                    Runtime.getRuntime().availableProcessors());
+                if (workers < 1) {
+                    throw error("--pipeline needs at least 1 thread");
                 }
-                String output = "";
-                for (String str : convertedMsgArr) {
-                    output = (output + str);
+                new PipelinedConverter(this, _input, _output)
+                    .convert(config, workers);
+                return;
+            }
+            while (_input.hasNextLine()) {
+                String setting = _input.nextLine();
+                String[] strArr = setting.split(" ");
+
+                if (!strArr[0].equals("*") && _input.hasNext()) {
+                    setting = _input.nextLine();
+                    _output.newLine();
+                } else if (!strArr[0].equals("*")) {
+                    throw new EnigmaException(
+                        "First line must be settings line.");
                 }
-                output = output.trim();
-                printMessageLine(output);
+
+                startMessage(configMach, setting);
+
+                if (_pool != null) {
+                    convertMessage(configMach);
+                } else {
+                    while (!_input.hasNext("\\*.*")
+                           && _input.hasNextLine()) {
+                        convertLine(configMach, _input.nextLine());
+                    }
+                }
+            }
+        } finally {
+            if (_output != null) {
+                _output.flush();
+            }
+            closeChannels();
+            if (_pool != null) {
+                _pool.shutdown();
+            }
+            if (reporter != null) {
+                reporter.shutdownNow();
+                System.err.printf("%s%n", _metrics.summary());
             }
         }
+    }
 
+    /** Publish _metrics as requested by --jmx, and return a thread that
+     *  prints a summary of them periodically as requested by --stats, or
+     *  null if not requested. */
+    private ScheduledExecutorService startMetrics() {
+        if (_options.containsKey("jmx")) {
+            _metrics.register();
+        }
+        if (!_options.containsKey("stats")) {
+            return null;
+        }
+        int period = intOption("stats", STATS_SECONDS);
+        if (period < 1) {
+            throw error("--stats needs a period of at least 1 second");
+        }
+        ScheduledExecutorService reporter =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "enigma-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+        reporter.scheduleAtFixedRate(
+            () -> System.err.printf("%s%n", _metrics.summary()),
+            period, period, TimeUnit.SECONDS);
+        return reporter;
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Read a setting line from _byteInput and set up M according to it,
+     *  then convert the rest of _byteInput with M as raw bytes, writing
+     *  the setting line and the result to _byteOutput.  When resuming
+     *  from a checkpoint, start where it says instead. */
+    private void convertBytes(Machine M) {
+        if (!(_alphabet instanceof ByteAlphabet)) {
+            throw error("--binary needs the alphabet %s", ByteAlphabet.NAME);
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
         try {
-            String alphaBeta = _config.next();
-            if (alphaBeta.length() == 0) {
-                throw new EnigmaException("Specify # rotor slots, # pawls");
-            }
-            _alphabet = new UpperCaseAlphabet();
-            int rotorSlots = _config.nextInt();
-            int numPawls = _config.nextInt();
-            _allRots = new ArrayList<>();
-
-            while (_config.hasNext()) {
-                String name = _config.next();
-                String typeAndNotches = _config.next();
-                char rotorType = typeAndNotches.charAt(0);
-                int typeLen = typeAndNotches.length();
-                String notchVals = typeAndNotches.substring(1, typeLen);
-                String cycleBuildUp = "";
-                boolean check = true;
-                String x = "";
-                while (check) {
-                    x = _config.next();
-                    if (x.charAt(0) == '(') {
-                        cycleBuildUp += x;
+            Checkpoint resumed = resumePoint();
+            long input, output;
+            int data;
+            if (resumed != null) {
+                if (!(_byteInput instanceof FileChannel)
+                    || !(_byteOutput instanceof FileChannel)) {
+                    throw error("--resume needs input and output files");
+                }
+                input = resumed.input();
+                output = resumed.output();
+                ((FileChannel) _byteInput).position(input);
+                ((FileChannel) _byteOutput).truncate(output).position(output);
+                resume(M, resumed);
+                _byteInput.read(buf);
+                buf.flip();
+                data = 0;
+            } else {
+                if (_byteOutput instanceof FileChannel) {
+                    ((FileChannel) _byteOutput).truncate(0);
+                }
+                int end = -1;
+                while (end < 0) {
+                    int start = buf.position();
+                    if (_byteInput.read(buf) < 0) {
+                        end = buf.position();
+                        break;
                     }
-                    if (x.charAt(0) == ')') {
-                        cycleBuildUp += x;
+                    for (int i = start; i < buf.position() && end < 0;
+                         i += 1) {
+                        if (buf.get(i) == '\n') {
+                            end = i;
+                        }
                     }
-                    if (!_config.hasNext("\\(.*")) {
-                        check = false;
+                    if (end < 0 && !buf.hasRemaining()) {
+                        throw error("setting line too long");
                     }
                 }
-                Permutation currPerm = new Permutation(cycleBuildUp, _alphabet);
-                Rotor r = null;
-
-                if (rotorType == 'R') {
-                    r = new Reflector(name, currPerm);
-                } else if (rotorType == 'N') {
-                    r = new FixedRotor(name, currPerm);
-                } else {
-                    r = new MovingRotor(name, currPerm, notchVals);
+                buf.flip();
+                byte[] line = new byte[end];
+                buf.get(line);
+                _setting = new String(line, StandardCharsets.ISO_8859_1)
+                    .trim();
+                setUp(M, _setting);
+
+                data = Math.min(end + 1, buf.limit());
+                ByteBuffer out = buf.duplicate();
+                out.position(0).limit(data);
+                writeBytes(out);
+                buf.position(data);
+                input = output = data;
+            }
+            while (true) {
+                ByteBuffer out = buf.duplicate();
+                int n = buf.remaining();
+                long start = System.nanoTime();
+                M.convert(buf, out);
+                _metrics.converted(n, System.nanoTime() - start);
+                out.flip().position(data);
+                writeBytes(out);
+                input += n;
+                output += n;
+                if (checkpointDue(input)) {
+                    if (_byteOutput instanceof FileChannel) {
+                        ((FileChannel) _byteOutput).force(false);
+                    }
+                    saveCheckpoint(input, output, M);
+                }
+                buf.clear();
+                if (_byteInput.read(buf) < 0) {
+                    break;
                 }
-                _allRots.add(r);
+                buf.flip();
+                data = 0;
             }
-            return new Machine(_alphabet, rotorSlots, numPawls, _allRots);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            finishCheckpoints();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
         }
     }
 
+    /** Write all of BUF to _byteOutput. */
+    private void writeBytes(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            _byteOutput.write(buf);
+        }
+    }
+
+    /** Return the checkpoint to resume from, or null if not resuming (or
+     *  if there is no checkpoint yet). */
+    Checkpoint resumePoint() {
+        if (!_options.containsKey("resume") || !_checkpoint.isFile()) {
+            return null;
+        }
+        return Checkpoint.read(_checkpoint);
+    }
+
+    /** Set up M as it was when CHECKPOINT was taken. */
+    void resume(Machine M, Checkpoint checkpoint) {
+        _setting = checkpoint.setting();
+        setUp(M, _setting);
+        checkpoint.restore(M);
+        _lastCheckpoint = checkpoint.input();
+    }
+
+    /** Return true iff checkpointing and a checkpoint is due, INPUT bytes
+     *  of input having been consumed. */
+    boolean checkpointDue(long input) {
+        return _checkpoint != null
+            && input - _lastCheckpoint >= _checkpointEvery;
+    }
+
+    /** Record in _checkpoint that INPUT bytes of input have been consumed
+     *  and OUTPUT bytes of output written (and forced to storage), with M
+     *  set up by _setting. */
+    void saveCheckpoint(long input, long output, Machine M) {
+        new Checkpoint(input, output, _setting, M).write(_checkpoint);
+        _lastCheckpoint = input;
+    }
+
+    /** Remove _checkpoint, if checkpointing, the conversion being
+     *  complete. */
+    void finishCheckpoints() {
+        if (_checkpoint != null && _checkpoint.exists()
+            && !_checkpoint.delete()) {
+            throw error("could not remove %s", _checkpoint);
+        }
+    }
+
+    /** Close _byteInput and _byteOutput, if open. */
+    private void closeChannels() {
+        try {
+            if (_byteInput != null) {
+                _byteInput.close();
+            }
+            if (_byteOutput != null) {
+                _byteOutput.close();
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return a new machine described by CONFIG, caching composites as
+     *  requested by --composites. */
+    Machine newMachine(MachineConfig config) {
+        Machine M = new Machine(config);
+        if (_options.containsKey("composites")) {
+            M.cacheComposites(intOption("composites", 0));
+        }
+        return M;
+    }
+
+    /** Return an Enigma machine configuration read from configuration
+     *  file _config, which may be in text or compiled form. */
+    private MachineConfig readConfig() {
+        MachineConfig config = ConfigParser.load(_config);
+        _alphabet = config.alphabet();
+        return config;
+    }
+
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        settings = settings.toUpperCase();
-        settings = settings.replaceAll("\\s+", " ");
-        String[] contents = settings.split(" ");
-
-        ArrayList<String> seen = new ArrayList<>();
-        for (int i = 1; i <= M.numRotors(); i++) {
-            if (seen.contains(contents[i])) {
-                throw new EnigmaException("Rotor repeated.");
-            } else {
-                seen.add(contents[i]);
+    void setUp(Machine M, String settings) {
+        long start = System.nanoTime();
+        String[] contents = fields(settings);
+        for (int i = M.numRotors() + 1; i < contents.length; i += 1) {
+            contents[i] = toAlphabet(contents[i]);
+        }
+        if (_alphabet instanceof ByteAlphabet
+            && contents.length > M.numRotors() + 1) {
+            contents[M.numRotors() + 1] =
+                ByteAlphabet.fromHex(contents[M.numRotors() + 1]);
+        }
+
+        for (int i = 2; i <= M.numRotors(); i++) {
+            for (int j = 1; j < i; j += 1) {
+                if (contents[i].equalsIgnoreCase(contents[j])) {
+                    throw new EnigmaException("Rotor repeated.");
+                }
             }
         }
         String[] rotorArr = new String[M.numRotors()];
@@ -201,42 +568,241 @@ public final class Main {
         }
 
         M.setRotors(contents[M.numRotors() + 1]);
-        String plugString = "";
-        for (int x = M.numRotors() + 2; x < contents.length; x++) {
-            plugString = plugString + contents[x];
+        int first = M.numRotors() + 2;
+        String plugString;
+        if (first >= contents.length) {
+            plugString = "";
+        } else if (first == contents.length - 1) {
+            plugString = contents[first];
+        } else {
+            StringBuilder plugs = new StringBuilder();
+            for (int x = first; x < contents.length; x++) {
+                plugs.append(contents[x]);
+            }
+            plugString = plugs.toString();
+        }
+        M.setPlugboard(M.config().plugboard(plugString));
+        _metrics.setUp(System.nanoTime() - start);
+    }
+
+    /** Set up M according to SETTING, the setting line of a message,
+     *  taking its keystream from the cache, if there is one. */
+    void startMessage(Machine M, String setting) {
+        _setting = setting;
+        setUp(M, setting);
+        if (_keystreams != null) {
+            _keystream = _keystreams.get(setting, M);
+        }
+    }
+
+    /** Return the blank-separated fields of LINE, with an empty first
+     *  field if LINE starts with a blank. */
+    private static String[] fields(String line) {
+        String[] result = new String[8];
+        int n = 0, i = 0;
+        do {
+            int start = i;
+            i = skip(line, i, false);
+            if (n == result.length) {
+                result = Arrays.copyOf(result, 2 * n);
+            }
+            result[n] = line.substring(start, i);
+            n += 1;
+            i = skip(line, i, true);
+        } while (i < line.length());
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the position in LINE of the first character at or after K
+     *  that is whitespace (if not BLANKS) or not whitespace (if BLANKS),
+     *  or the length of LINE if there is none. */
+    private static int skip(String line, int k, boolean blanks) {
+        while (k < line.length()
+               && Character.isWhitespace(line.charAt(k)) == blanks) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Return C, or its upper-case equivalent if only that is in
+     *  _alphabet. */
+    char toAlphabet(char c) {
+        if (!_alphabet.contains(c)) {
+            char upper = Character.toUpperCase(c);
+            if (_alphabet.contains(upper)) {
+                return upper;
+            }
+        }
+        return c;
+    }
+
+    /** Return S with each character replaced as by toAlphabet. */
+    private String toAlphabet(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = toAlphabet(chars[i]);
         }
+        return new String(chars);
+    }
 
-        M.setPlugboard(new Permutation(plugString, _alphabet));
+    /** Convert the message line MSG with M, ignoring whitespace (and
+     *  case, for letters whose upper-case forms alone are in _alphabet),
+     *  and print the result. */
+    private void convertLine(Machine M, String msg) {
+        if (_line.length < msg.length()) {
+            _line = new char[Math.max(msg.length(), 2 * _line.length)];
+        }
+        int len = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char c = msg.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                _line[len] = toAlphabet(c);
+                len += 1;
+            }
+        }
+        convertText(M, _line, len);
+        printMessageLine(_line, len);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        char[] msgArr = msg.toCharArray();
-        int counter = 0;
-        for (char c : msgArr) {
-            if (counter == 5) {
-                _output.print(" ");
-                counter = 0;
+    /** Read the rest of the current message, convert it with M as for
+     *  convertLine, splitting long messages among the threads of _pool,
+     *  and print the result. */
+    private void convertMessage(Machine M) {
+        int len = 0, lines = 0;
+        while (!_input.hasNext("\\*.*") && _input.hasNextLine()) {
+            String msg = _input.nextLine();
+            if (_line.length - len < msg.length()) {
+                _line = Arrays.copyOf(_line,
+                    Math.max(len + msg.length(), 2 * _line.length));
+            }
+            int start = len;
+            for (int i = 0; i < msg.length(); i += 1) {
+                char c = msg.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    _line[len] = toAlphabet(c);
+                    len += 1;
+                }
             }
-            _output.print(c);
-            counter++;
+            if (lines == _lineLengths.length) {
+                _lineLengths = Arrays.copyOf(_lineLengths, 2 * lines);
+            }
+            _lineLengths[lines] = len - start;
+            lines += 1;
         }
-        _output.println();
+
+        convertText(M, _line, len);
+
+        for (int i = 0, start = 0; i < lines; i += 1) {
+            _output.write(_line, start, _lineLengths[i]);
+            _output.newLine();
+            start += _lineLengths[i];
+        }
+    }
+
+    /** Convert BUF[0 .. LEN-1] in place with M.  Characters are taken
+     *  from _keystream while it lasts, after which M is moved to where
+     *  the keystream left off.  Long runs of the rest are split among
+     *  the threads of _pool, if there is one and M is jumpable. */
+    void convertText(Machine M, char[] buf, int len) {
+        long start = System.nanoTime();
+        int k = 0;
+        if (_keystream != null) {
+            k = _keystream.convert(buf, 0, len);
+            if (k < len) {
+                M.seek(_keystream.position());
+                _keystream = null;
+            }
+        }
+        if (_pool == null || len - k <= ConvertTask.GRAIN
+            || !M.jumpable()) {
+            M.convert(buf, k, len - k, buf, k);
+        } else {
+            _pool.invoke(new ConvertTask(M, buf, k, len));
+            M.advance(len - k);
+        }
+        _metrics.converted(len, System.nanoTime() - start);
+    }
+
+    /** Print the first LEN characters of MSG in groups of five (except
+     *  that the last group may have fewer letters). */
+    private void printMessageLine(char[] msg, int len) {
+        _output.write(msg, 0, len);
+        _output.newLine();
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Counts of the work done. */
+    private final EnigmaMetrics _metrics = EnigmaMetrics.global();
+
+    /** Default period of --stats, in seconds. */
+    private static final int STATS_SECONDS = 10;
+
     /** Source of input messages. */
     private Scanner _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Machine configuration file. */
+    private File _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private MessageWriter _output;
+
+    /** Buffer holding the message line being converted. */
+    private char[] _line = new char[256];
+
+    /** Lengths of the lines of the message being converted by
+     *  convertMessage. */
+    private int[] _lineLengths = new int[16];
+
+    /** Options given on the command line, mapped to their values (null
+     *  for options given without one). */
+    private HashMap<String, String> _options = new HashMap<>();
+
+    /** Threads used to convert messages in parallel, or null if
+     *  messages are converted one line at a time. */
+    private ForkJoinPool _pool;
+
+    /** Size of the buffer used to convert raw bytes. */
+    private static final int BYTE_BUFFER_SIZE = 1 << 16;
+
+    /** Source of raw bytes for --binary, or null if
+     *  converting text. */
+    private ReadableByteChannel _byteInput;
+
+    /** Destination of converted bytes for --binary. */
+    private WritableByteChannel _byteOutput;
+
+    /** Input and output files for --mapped, or null if not mapping. */
+    private File _mappedInput, _mappedOutput;
+
+    /** Default number of keystrokes in a cached keystream. */
+    private static final int KEYSTREAM_POSITIONS = 4096;
+
+    /** Default limit on the size of cached keystreams, in megabytes. */
+    private static final int KEYSTREAM_MEGABYTES = 64;
+
+    /** Default amount of input between checkpoints, in megabytes. */
+    private static final int CHECKPOINT_MEGABYTES = 64;
+
+    /** File recording the progress of the conversion, or null if none is
+     *  kept. */
+    private File _checkpoint;
+
+    /** Bytes of input between checkpoints. */
+    private long _checkpointEvery;
+
+    /** Input offset of the last checkpoint. */
+    private long _lastCheckpoint;
+
+    /** The setting line in effect. */
+    private String _setting;
+
+    /** Keystreams of recent setting lines, or null if they are not
+     *  cached. */
+    private KeystreamCache _keystreams;
 
-    /** Accumulation of all rotors to be used from config file. */
-    private ArrayList<Rotor> _allRots;
+    /** Keystream for the current message, or null once it is used up
+     *  (or if there is none). */
+    private Keystream _keystream;
 }
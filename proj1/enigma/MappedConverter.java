@@ -0,0 +1,237 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** The converter used by --mapped, which reads its input file and
+ *  writes its output file through memory maps of a fixed size, so that
+ *  neither need fit in memory.
+ *  @author Kushal Singh
+ */
+class MappedConverter {
+
+    /** A converter of the messages in INPUT to OUTPUT, whose setting
+     *  lines, conversions, and checkpoints are handled by MAIN. */
+    MappedConverter(Main main, File input, File output) {
+        _main = main;
+        _input = input;
+        _output = output;
+    }
+
+    /** Convert the messages in my input with M, as for Main.process,
+     *  writing the results to my output.  A first pass over the input
+     *  finds the exact size of the output, so that both files can be
+     *  mapped piece by piece.  When resuming from a checkpoint, the
+     *  second pass starts where it says.  If the second pass fails, the
+     *  output is cut back to what was written, as in text mode. */
+    void convert(Machine M) {
+        Checkpoint resumed = _main.resumePoint();
+        try (FileChannel in = FileChannel.open(_input.toPath());
+             FileChannel out =
+                 resumed != null
+                 ? FileChannel.open(_output.toPath(),
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE)
+                 : FileChannel.open(_output.toPath(),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            _outputSize = mapLines(in, null, null, 0);
+            _outMap = null;
+            _outBase = 0;
+            long from = 0;
+            if (resumed != null) {
+                _main.resume(M, resumed);
+                _outBase = resumed.output();
+                from = resumed.input();
+            }
+            boolean done = false;
+            try {
+                mapLines(in, M, out, from);
+                done = true;
+            } finally {
+                if (!done) {
+                    long written = _outBase
+                        + (_outMap == null ? 0 : _outMap.position());
+                    _outMap = null;
+                    out.truncate(written);
+                }
+            }
+            if (_outMap != null) {
+                _outMap.force();
+            }
+            _main.finishCheckpoints();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Go through the lines of IN from byte FROM, which starts a line,
+     *  mapping MAP_WINDOW bytes of it at a time, and return the number
+     *  of bytes of output they produce.  Unless M is null, also set up M
+     *  from each setting line (one whose first non-blank is '*') and
+     *  convert each other line with it, writing the result to OUT.  If
+     *  FROM is not 0, M is already set up for the line there. */
+    private long mapLines(FileChannel in, Machine M, FileChannel out,
+                          long from) throws IOException {
+        long size = in.size(), total = 0, pos = from;
+        boolean started = from > 0;
+        while (pos < size) {
+            int limit = (int) Math.min(MAP_WINDOW, size - pos);
+            MappedByteBuffer buf =
+                in.map(FileChannel.MapMode.READ_ONLY, pos, limit);
+            int start = 0;
+            while (start < limit) {
+                int end = start;
+                while (end < limit && buf.get(end) != '\n') {
+                    end += 1;
+                }
+                if (end == limit && pos + limit < size) {
+                    if (start == 0) {
+                        throw error("input line too long");
+                    }
+                    break;
+                }
+                int first = start;
+                while (first < end && isBlank(buf.get(first))) {
+                    first += 1;
+                }
+                if (first < end && buf.get(first) == '*') {
+                    if (M != null) {
+                        byte[] line = new byte[end - first];
+                        ByteBuffer setting = buf.duplicate();
+                        setting.position(first);
+                        setting.get(line);
+                        _main.startMessage(M, new String(
+                            line, StandardCharsets.ISO_8859_1).trim());
+                    }
+                    started = true;
+                } else if (!started && first < end) {
+                    throw new EnigmaException(
+                        "First line must be settings line.");
+                } else {
+                    total += mapMessageLine(buf, first, end, M, out);
+                }
+                start = end + 1;
+                if (M != null && _main.checkpointDue(pos + start)) {
+                    if (_outMap != null) {
+                        _outMap.force();
+                    }
+                    long written = _outBase
+                        + (_outMap == null ? 0 : _outMap.position());
+                    _main.saveCheckpoint(Math.min(pos + start, size),
+                                         written, M);
+                }
+            }
+            pos += Math.min(start, limit);
+        }
+        return total;
+    }
+
+    /** Return the number of bytes of output for the message line
+     *  BUF[START .. END-1].  Unless M is null, also convert it with M
+     *  and write the result to OUT, MAP_CHUNK characters at a time. */
+    private long mapMessageLine(ByteBuffer buf, int start, int end,
+                                Machine M, FileChannel out)
+        throws IOException {
+        int len = 0;
+        for (int i = start; i < end; i += 1) {
+            if (!isBlank(buf.get(i))) {
+                len += 1;
+            }
+        }
+        int size = len + Math.max(0, (len - 1) / MessageWriter.GROUP)
+            + NEWLINE.length;
+        if (M == null) {
+            return size;
+        }
+
+        if (_outMap == null || _outMap.remaining() < size) {
+            if (_outMap != null) {
+                _outBase += _outMap.position();
+            }
+            long rest = _outputSize - _outBase;
+            _outMap = out.map(FileChannel.MapMode.READ_WRITE, _outBase,
+                              Math.min(rest, Math.max(MAP_WINDOW, size)));
+        }
+        int n = 0, written = 0;
+        for (int i = start; i < end; i += 1) {
+            byte b = buf.get(i);
+            if (!isBlank(b)) {
+                _line[n] = _main.toAlphabet((char) (b & 0xff));
+                n += 1;
+                if (n == _line.length) {
+                    written = mapChunk(M, n, written);
+                    n = 0;
+                }
+            }
+        }
+        mapChunk(M, n, written);
+        _outMap.put(NEWLINE);
+        return size;
+    }
+
+    /** Convert _line[0 .. N-1] with M and put the result in _outMap,
+     *  where WRITTEN characters of the same line have been put there
+     *  already, and return the number written in all. */
+    private int mapChunk(Machine M, int n, int written) {
+        _main.convertText(M, _line, n);
+        for (int i = 0; i < n; i += 1) {
+            if (written + i > 0 && (written + i) % MessageWriter.GROUP == 0) {
+                _outMap.put((byte) ' ');
+            }
+            if (_line[i] > 0xff) {
+                throw error("character %c cannot be written to a mapped "
+                            + "file", _line[i]);
+            }
+            _outMap.put((byte) _line[i]);
+        }
+        return written + n;
+    }
+
+    /** Return true iff B is an ASCII blank character. */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r'
+            || b == '\f' || b == 0x0b;
+    }
+
+    /** Number of bytes of each file mapped at once, and so the greatest
+     *  length of an input line. */
+    private static final int MAP_WINDOW = 1 << 26;
+
+    /** Number of characters of a line converted at once. */
+    private static final int MAP_CHUNK = 1 << 20;
+
+    /** The line separator, as written to the output. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+    /** Handles setting lines, conversion, and checkpoints. */
+    private final Main _main;
+
+    /** Input and output files. */
+    private final File _input, _output;
+
+    /** Total size of _output. */
+    private long _outputSize;
+
+    /** Buffer holding the piece of a message line being converted. */
+    private final char[] _line = new char[MAP_CHUNK];
+
+    /** Mapped piece of _output being written, starting at byte _outBase
+     *  of the file. */
+    private MappedByteBuffer _outMap;
+
+    /** Offset of _outMap in _output. */
+    private long _outBase;
+
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** One message of an input: its setting line and message lines, which
+ *  are converted in place and later printed.  Jobs are numbered in input
+ *  order so that results computed out of order can be printed in order.
+ *  @author Kushal Singh
+ */
+class MessageJob {
+
+    /** Marks the end of the jobs. */
+    static final MessageJob END = new MessageJob(-1, false, null);
+
+    /** Job number SEQUENCE, for the message following setting line
+     *  SETTING.  NEWLINE indicates that a blank line preceded SETTING, to
+     *  be reproduced in the output. */
+    MessageJob(long sequence, boolean newLine, String setting) {
+        _sequence = sequence;
+        _newLine = newLine;
+        _setting = setting;
+    }
+
+    /** Return my job number. */
+    long sequence() {
+        return _sequence;
+    }
+
+    /** Return my setting line. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return the number of characters in my message. */
+    int length() {
+        return _length;
+    }
+
+    /** Append character C to my current message line. */
+    void append(char c) {
+        if (_length == _text.length) {
+            _text = Arrays.copyOf(_text, 2 * _length);
+        }
+        _text[_length] = c;
+        _length += 1;
+    }
+
+    /** End my current message line. */
+    void endLine() {
+        if (_lines == _lineLengths.length) {
+            _lineLengths = Arrays.copyOf(_lineLengths, 2 * _lines);
+        }
+        _lineLengths[_lines] = _length - _lineStart;
+        _lines += 1;
+        _lineStart = _length;
+    }
+
+    /** Convert my message with M, which has been set up according to my
+     *  setting line. */
+    void convert(Machine M) {
+        M.convert(_text, 0, _length, _text);
+    }
+
+    /** Record that I could not be read or converted because of EXCP. */
+    void fail(RuntimeException excp) {
+        _error = excp;
+    }
+
+    /** Print my converted message on OUT, or throw the exception that
+     *  prevented me from being converted. */
+    void write(MessageWriter out) {
+        if (_newLine) {
+            out.newLine();
+        }
+        if (_error != null) {
+            throw _error;
+        }
+        for (int i = 0, start = 0; i < _lines; i += 1) {
+            out.write(_text, start, _lineLengths[i]);
+            out.newLine();
+            start += _lineLengths[i];
+        }
+    }
+
+    /** My job number. */
+    private final long _sequence;
+
+    /** True iff a blank line preceded my setting line. */
+    private final boolean _newLine;
+
+    /** My setting line. */
+    private final String _setting;
+
+    /** My message, without blanks, all lines together. */
+    private char[] _text = new char[64];
+
+    /** Number of characters in _text. */
+    private int _length;
+
+    /** Lengths of the lines of my message. */
+    private int[] _lineLengths = new int[4];
+
+    /** Position in _text of the start of my current line. */
+    private int _lineStart;
+
+    /** Number of lines in my message. */
+    private int _lines;
+
+    /** What prevented me from being converted, if anything. */
+    private RuntimeException _error;
+
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A sink for converted messages that prints each message line in groups
+ *  of five characters separated by blanks (the last group of a line may
+ *  be shorter).  Output is collected in a buffer and handed to the
+ *  underlying stream in bulk.
+ *  @author Kushal Singh
+ */
+class MessageWriter {
+
+    /** Size of my output buffer, in characters. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** A MessageWriter printing to OUT. */
+    MessageWriter(OutputStream out) {
+        this(new OutputStreamWriter(out));
+    }
+
+    /** A MessageWriter printing to OUT. */
+    MessageWriter(Writer out) {
+        _out = out;
+        _buffer = new char[BUFFER_SIZE];
+    }
+
+    /** Append characters MSG[OFF .. OFF+LEN-1] to the current line,
+     *  continuing its grouping. */
+    void write(char[] msg, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            if (_group == GROUP) {
+                put(' ');
+                _group = 0;
+            }
+            int n = Math.min(GROUP - _group, end - off);
+            if (_length + n > _buffer.length) {
+                flushBuffer();
+            }
+            System.arraycopy(msg, off, _buffer, _length, n);
+            _length += n;
+            _group += n;
+            off += n;
+        }
+    }
+
+    /** Append the characters of MSG to the current line. */
+    void write(String msg) {
+        write(msg.toCharArray(), 0, msg.length());
+    }
+
+    /** End the current line. */
+    void newLine() {
+        for (int i = 0; i < NEWLINE.length(); i += 1) {
+            put(NEWLINE.charAt(i));
+        }
+        _group = 0;
+    }
+
+    /** Write out all buffered output. */
+    void flush() {
+        flushBuffer();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Flush and close the underlying stream. */
+    void close() {
+        flush();
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not close output: %s", excp.getMessage());
+        }
+    }
+
+    /** Add C to the buffer. */
+    private void put(char c) {
+        if (_length == _buffer.length) {
+            flushBuffer();
+        }
+        _buffer[_length] = c;
+        _length += 1;
+    }
+
+    /** Hand the buffered characters to _out. */
+    private void flushBuffer() {
+        try {
+            _out.write(_buffer, 0, _length);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _length = 0;
+    }
+
+    /** The line separator. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Destination of my output. */
+    private final Writer _out;
+
+    /** Pending output. */
+    private final char[] _buffer;
+
+    /** Number of valid characters in _buffer. */
+    private int _length;
+
+    /** Number of characters in the current group. */
+    private int _group;
+
+}
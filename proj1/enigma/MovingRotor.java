@@ -14,22 +14,36 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
-    }
-
-    /** Returns ASCII version of characters in notches. */
-    int[] getNotchesArr() {
-        int[] temp = new int[_notches.length()];
-        for (int i = 0; i < _notches.length(); i++) {
-            temp[i] = (_notches.charAt(i));
+        _notches = new boolean[size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            char c = notches.charAt(i);
+            if (!alphabet().contains(c)) {
+                throw error("notch %c not in alphabet", c);
+            }
+            _notches[alphabet().toInt(c)] = true;
+        }
+        _notchesBelow = new int[size() + 1];
+        for (int k = 0; k < size(); k += 1) {
+            _notchesBelow[k + 1] = _notchesBelow[k] + (_notches[k] ? 1 : 0);
+        }
+        _notchList = new int[_notchesBelow[size()]];
+        _plainList = new int[size() - _notchList.length];
+        for (int k = 0, n = 0; k < size(); k += 1) {
+            if (_notches[k]) {
+                _notchList[n] = k;
+                n += 1;
+            } else {
+                _plainList[k - n] = k;
+            }
         }
-        return temp;
     }
 
     @Override
     void advance() {
-        _setting = (setting() + 1) % size();
-
+        _setting += 1;
+        if (_setting == size()) {
+            _setting = 0;
+        }
     }
 
     @Override
@@ -38,32 +52,75 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            int cur = _notches.charAt(i);
-            if (('A' + permutation().wrap((setting() - 1))) == cur) {
+    boolean atNotch(int posn) {
+        return _notches[posn];
+    }
+
+    /** Returns the characters of my notches, in alphabet order. */
+    String notches() {
+        StringBuilder result = new StringBuilder();
+        for (int k : _notchList) {
+            result.append(alphabet().toChar(k));
+        }
+        return result.toString();
+    }
+
+    /** Returns true iff some two consecutive settings are both at
+     *  notches. */
+    boolean adjacentNotches() {
+        for (int k = 0; k < size(); k += 1) {
+            if (_notches[k] && _notches[(k + 1) % size()]) {
                 return true;
             }
         }
         return false;
     }
 
-    @Override
-    int convertForward(int p) {
-        int permInput = permutation().wrap(p + setting());
-        int temp = (permutation().permute(permInput) - setting());
-        return permutation().wrap(temp);
+    /** Returns the number of notches among the STEPS consecutive
+     *  settings starting at setting POSN. */
+    long notchesFrom(int posn, long steps) {
+        int rest = (int) (steps % size());
+        long count = (steps / size()) * _notchList.length;
+        int end = posn + rest;
+        if (end <= size()) {
+            return count + _notchesBelow[end] - _notchesBelow[posn];
+        }
+        return count + _notchList.length - _notchesBelow[posn]
+            + _notchesBelow[end - size()];
     }
 
-    @Override
-    int convertBackward(int e) {
-        int invInput = permutation().wrap(e + setting());
-        int temp = (permutation().invert(invInput) - setting());
-        return permutation().wrap(temp);
+    /** Returns the number of steps from setting POSN to the Kth (K >= 1)
+     *  notch reached, counting a notch at POSN itself as the first. */
+    long nthNotch(int posn, long k) {
+        return nth(_notchList, _notchesBelow[posn], posn, k);
+    }
+
+    /** Returns the number of steps from setting POSN to the Kth (K >= 1)
+     *  setting without a notch, counting POSN itself as for nthNotch. */
+    long nthPlain(int posn, long k) {
+        return nth(_plainList, posn - _notchesBelow[posn], posn, k);
     }
 
-    /** String value of notches. */
-    private String _notches;
+    /** Returns the number of steps from setting POSN to the Kth (K >= 1)
+     *  member of SETTINGS reached, where SETTINGS is sorted and its first
+     *  BELOW members are less than POSN. */
+    private long nth(int[] settings, int below, int posn, long k) {
+        long index = below + k - 1;
+        int setting = settings[(int) (index % settings.length)];
+        return (index / settings.length) * size() + setting - posn;
+    }
+
+    /** _notches[k] is true iff setting K is at a notch. */
+    private final boolean[] _notches;
+
+    /** _notchesBelow[k] is the number of notches at settings < K. */
+    private final int[] _notchesBelow;
+
+    /** The settings at notches, in increasing order. */
+    private final int[] _notchList;
+
+    /** The settings not at notches, in increasing order. */
+    private final int[] _plainList;
 
 
 }
@@ -120,10 +120,22 @@ public class MovingRotorTest {
         checkRotor("Rotor I advanced", UPPER_STRING, NAVALA_MAP.get("Beta"));
     }
 
-
-
-
-
-
-
+    @Test
+    public void checkCompiledRotor() {
+        setRotor("V", NAVALA, "Z");
+        Rotor compiled = new MovingRotor("V", new Permutation(NAVALA.get("V"),
+                UPPER), "Z");
+        compiled.compile();
+        for (int s = 0; s < UPPER.size(); s += 1) {
+            rotor.set(s);
+            compiled.set(s);
+            for (int p = 0; p < UPPER.size(); p += 1) {
+                assertEquals(msg("compiled", "forward %d at %d", p, s),
+                        rotor.convertForward(p), compiled.convertForward(p));
+                assertEquals(msg("compiled", "backward %d at %d", p, s),
+                        rotor.convertBackward(p),
+                        compiled.convertBackward(p));
+            }
+        }
+    }
 }
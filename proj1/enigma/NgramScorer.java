@@ -0,0 +1,108 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A measure of how much a text looks like a sample of plaintext, by the
+ *  frequencies of its n-grams (runs of N consecutive characters).  Log
+ *  probabilities of all n-grams of an alphabet are held in one array,
+ *  indexed by the n-gram read as a base-S numeral, where S is the size of
+ *  the alphabet.  Scoring allocates nothing.
+ *  @author Kushal Singh
+ */
+class NgramScorer {
+
+    /** Largest number of n-grams whose statistics may be held. */
+    static final int MAX_NGRAMS = 1 << 24;
+
+    /** A scorer for N-grams of ALPHA, whose statistics are those of
+     *  SAMPLE, indices in ALPHA of a sample of plaintext.  Every n-gram
+     *  is counted once more than it occurs, so that none is impossible. */
+    NgramScorer(Alphabet alpha, int n, int[] sample) {
+        if (n < 1) {
+            throw error("n-grams must be at least one character long");
+        }
+        long count = 1;
+        for (int i = 0; i < n; i += 1) {
+            count *= alpha.size();
+            if (count > MAX_NGRAMS) {
+                throw error("too many %d-grams to hold", n);
+            }
+        }
+        _n = n;
+        _size = alpha.size();
+        _modulus = (int) (count / _size);
+        _logProbs = new double[(int) count];
+        if (sample.length < n) {
+            throw error("plaintext sample shorter than one %d-gram", n);
+        }
+        int[] counts = new int[_logProbs.length];
+        int gram = 0;
+        for (int i = 0; i < sample.length; i += 1) {
+            gram = (gram % _modulus) * _size + sample[i];
+            if (i >= n - 1) {
+                counts[gram] += 1;
+            }
+        }
+        double total = Math.log(sample.length - n + 1 + count);
+        for (int g = 0; g < counts.length; g += 1) {
+            _logProbs[g] = Math.log(counts[g] + 1) - total;
+        }
+    }
+
+    /** Return the length of my n-grams. */
+    int length() {
+        return _n;
+    }
+
+    /** Return the mean log probability of the n-grams in TEXT[0 .. LEN-1],
+     *  indices in my alphabet, or negative infinity if there are none. */
+    double score(int[] text, int len) {
+        if (len < _n) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double sum = 0;
+        int gram = 0;
+        for (int i = 0; i < len; i += 1) {
+            gram = (gram % _modulus) * _size + text[i];
+            if (i >= _n - 1) {
+                sum += _logProbs[gram];
+            }
+        }
+        return sum / (len - _n + 1);
+    }
+
+    /** Return the index of coincidence of TEXT[0 .. LEN-1], indices in an
+     *  alphabet of SIZE characters: the chance that two characters drawn
+     *  from different places in the text are the same, times SIZE (so
+     *  that random text scores about 1).  COUNTS, of length at least
+     *  SIZE, is used as scratch space. */
+    static double coincidence(int[] text, int len, int size, int[] counts) {
+        if (len < 2) {
+            return 0;
+        }
+        for (int c = 0; c < size; c += 1) {
+            counts[c] = 0;
+        }
+        for (int i = 0; i < len; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long pairs = 0;
+        for (int c = 0; c < size; c += 1) {
+            pairs += (long) counts[c] * (counts[c] - 1);
+        }
+        return (double) pairs * size / ((long) len * (len - 1));
+    }
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of (n-1)-grams. */
+    private final int _modulus;
+
+    /** Log probabilities of the n-grams, by number. */
+    private final double[] _logProbs;
+
+}
@@ -1,5 +1,10 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -14,38 +19,119 @@ class Permutation {
      *  included in any cycle map to themselves. Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
-        int countOpen = 0;
-        int countClosed = 0;
-        for (int i = 0; i < _cycles.length(); i++) {
-            if (_cycles.charAt(i) == '(') {
-                countOpen++;
-            }
-            if (_cycles.charAt(i) == ')') {
-                countClosed++;
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        for (int i = 0; i < size(); i += 1) {
+            _forward[i] = _inverse[i] = -1;
+        }
+
+        int open = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (open >= 0) {
+                    throw new EnigmaException("Wrong # setting arguments.");
+                }
+                open = i + 1;
+            } else if (c == ')') {
+                if (open < 0) {
+                    throw new EnigmaException("Wrong # setting arguments.");
+                }
+                addCycle(cycles.substring(open, i));
+                open = -1;
+            } else if (!Character.isWhitespace(c) && open < 0) {
+                throw error("character %c is not within a cycle", c);
             }
         }
-        if (countOpen != countClosed) {
+        if (open >= 0) {
             throw new EnigmaException("Wrong # setting arguments.");
         }
 
-        permutations = new int[size()];
-        int arrayTraverse = 0;
-        for (int i = 0; i < _cycles.length(); i++) {
-            if ((int) _cycles.charAt(i) >= 'A') {
-                permutations[arrayTraverse] = (int) _cycles.charAt(i);
-                arrayTraverse++;
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward[i] < 0) {
+                _forward[i] = _inverse[i] = i;
             }
         }
+        _derangement = noFixedPoints(_forward);
+    }
+
+    /** A permutation of the indices of ALPHABET taking each index K to
+     *  FORWARD[K].  FORWARD is not copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (forward.length != size()) {
+            throw error("permutation table has wrong size");
+        }
+        _forward = forward;
+        _inverse = new int[size()];
+        for (int i = 0; i < size(); i += 1) {
+            _inverse[i] = -1;
+        }
+        for (int i = 0; i < size(); i += 1) {
+            int k = forward[i];
+            if (k < 0 || k >= size() || _inverse[k] >= 0) {
+                throw error("permutation table is not a permutation");
+            }
+            _inverse[k] = i;
+        }
+        _derangement = noFixedPoints(_forward);
+    }
+
+    /** A permutation of the indices of ALPHABET with tables FORWARD and
+     *  INVERSE, which are already known to be inverse permutations and
+     *  are not copied. */
+    private Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _derangement = noFixedPoints(_forward);
+    }
+
+    /** Return true iff FORWARD[K] != K for all K. */
+    private static boolean noFixedPoints(int[] forward) {
+        for (int k = 0; k < forward.length; k += 1) {
+            if (forward[k] == k) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
+        int first = -1, prev = -1;
+        for (int i = 0; i < cycle.length(); i += 1) {
+            char c = cycle.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (!_alphabet.contains(c)) {
+                throw error("character %c not in alphabet", c);
+            }
+            int k = _alphabet.toInt(c);
+            if (_inverse[k] >= 0 || k == first) {
+                throw error("character %c repeated in cycles", c);
+            }
+            if (prev < 0) {
+                first = k;
+            } else {
+                _forward[prev] = k;
+                _inverse[k] = prev;
+            }
+            prev = k;
+        }
+        if (first >= 0) {
+            _forward[prev] = first;
+            _inverse[first] = prev;
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -61,78 +147,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        if (_cycles.length() == 0) {
-            return p;
-        }
-
-        int val = wrap(p) + 'A';
-        char temp = (char) val;
-        char temp2 = permute(temp);
-        return (int) temp2 - 'A';
-
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to C modulo the alphabet size. */
     int invert(int c) {
-        if (_cycles.length() == 0) {
-            return c;
-        }
-
-        int val = wrap(c) + 'A';
-        char temp = (char) val;
-        int temp2 = invert(temp);
-        return temp2 - 'A';
-
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (_cycles.length() == 0) {
-            return p;
-        }
-
-        for (int aIter = 0; aIter < permutations.length; aIter++) {
-            if ((char) permutations[aIter] == p) {
-                int stringIndex = _cycles.indexOf(p);
-                if (_cycles.charAt(stringIndex + 1) == ')') {
-                    int start = stringIndex;
-                    char startChar = _cycles.charAt(stringIndex);
-                    while (startChar != '(') {
-                        start = start - 1;
-                        startChar = _cycles.charAt(start);
-                    }
-                    return _cycles.charAt(start + 1);
-                }
-                return (char) permutations[aIter + 1];
-            }
-        }
-        return p;
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     int invert(char c) {
-        if (_cycles.length() == 0) {
-            return (int) c;
-        }
-
-        for (int aIter = 0; aIter < permutations.length; aIter++) {
-            if ((char) permutations[aIter] == c) {
-                int stringIndex = _cycles.indexOf(c);
-                if (_cycles.charAt(stringIndex - 1) == '(') {
-                    int start = stringIndex;
-                    char startChar = _cycles.charAt(start);
-                    while (startChar != ')') {
-                        start = start + 1;
-                        startChar = _cycles.charAt(start);
-                    }
-                    return (int) _cycles.charAt(start - 1);
-                }
-                return permutations[aIter - 1];
-            }
-        }
-        return (int) c;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -143,16 +175,184 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        return true;
+        return _derangement;
+    }
+
+    /** Return true iff OTHER is not null and permutes an alphabet of my
+     *  size exactly as I do. */
+    boolean same(Permutation other) {
+        return other == this
+            || other != null && other.size() == size()
+               && Arrays.equals(other._forward, _forward);
+    }
+
+    /** Return the permutation that applies me and then OTHER, which must
+     *  permute an alphabet of my size: its Kth index is
+     *  OTHER.permute(permute(K)).  Results are cached for the most
+     *  recently used OTHERs. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("permutations of different sizes");
+        }
+        synchronized (this) {
+            if (_products == null) {
+                _products = lru();
+            }
+            Permutation result = _products.get(other);
+            if (result != null) {
+                return result;
+            }
+        }
+        int[] forward = new int[size()];
+        int[] inverse = new int[size()];
+        for (int k = 0; k < forward.length; k += 1) {
+            int j = other._forward[_forward[k]];
+            forward[k] = j;
+            inverse[j] = k;
+        }
+        Permutation result = new Permutation(_alphabet, forward, inverse);
+        synchronized (this) {
+            _products.put(other, result);
+        }
+        return result;
+    }
+
+    /** Return my inverse, whose inverse is me. */
+    Permutation inverse() {
+        Permutation result = _inversePerm;
+        if (result == null) {
+            result = new Permutation(_alphabet, _inverse, _forward);
+            result._inversePerm = this;
+            _inversePerm = result;
+        }
+        return result;
+    }
+
+    /** Return the permutation that applies me N times (or my inverse -N
+     *  times, if N is negative).  Takes time proportional to my size,
+     *  independent of N.  Results are cached for the most recently used
+     *  Ns. */
+    Permutation pow(int n) {
+        if (n == 1) {
+            return this;
+        } else if (n == -1) {
+            return inverse();
+        }
+        synchronized (this) {
+            if (_powers == null) {
+                _powers = lru();
+            }
+            Permutation result = _powers.get(n);
+            if (result != null) {
+                return result;
+            }
+        }
+        int[] forward = new int[size()];
+        int[] inverse = new int[size()];
+        for (int[] cycle : cycles()) {
+            int len = cycle.length;
+            int shift = (int) Math.floorMod((long) n, (long) len);
+            for (int i = 0, j = shift; i < len; i += 1) {
+                forward[cycle[i]] = cycle[j];
+                inverse[cycle[j]] = cycle[i];
+                j = j + 1 == len ? 0 : j + 1;
+            }
+        }
+        Permutation result = new Permutation(_alphabet, forward, inverse);
+        synchronized (this) {
+            _powers.put(n, result);
+        }
+        return result;
+    }
+
+    /** Return my cycles, including those of length 1, each as an array
+     *  of indices starting with its smallest, in order of their smallest
+     *  indices.  The result is shared and must not be changed. */
+    int[][] cycles() {
+        int[][] result = _cycles;
+        if (result == null) {
+            boolean[] seen = new boolean[size()];
+            ArrayList<int[]> cycles = new ArrayList<>();
+            int[] cycle = new int[size()];
+            for (int k = 0; k < seen.length; k += 1) {
+                if (seen[k]) {
+                    continue;
+                }
+                int len = 0;
+                for (int j = k; !seen[j]; j = _forward[j]) {
+                    seen[j] = true;
+                    cycle[len] = j;
+                    len += 1;
+                }
+                int[] trimmed = new int[len];
+                System.arraycopy(cycle, 0, trimmed, 0, len);
+                cycles.add(trimmed);
+            }
+            result = cycles.toArray(new int[cycles.size()][]);
+            _cycles = result;
+        }
+        return result;
+    }
+
+    /** Return the number of times I must be applied to give the identity
+     *  (the least common multiple of my cycle lengths), or -1 if that is
+     *  too large for a long. */
+    long order() {
+        long result = 1;
+        for (int[] cycle : cycles()) {
+            long len = cycle.length;
+            long a = result, b = len;
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            long factor = len / a;
+            if (result > Long.MAX_VALUE / factor) {
+                return -1;
+            }
+            result *= factor;
+        }
+        return result;
+    }
+
+    /** Return an empty map that keeps at most CACHE_SIZE entries,
+     *  forgetting the least recently used. */
+    private static <K> Map<K, Permutation> lru() {
+        return new LinkedHashMap<K, Permutation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Permutation> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
     }
 
+    /** Number of results of compose and of pow that I remember. */
+    static final int CACHE_SIZE = 16;
+
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
 
-    /** String of cycles as stated in config file. */
-    private String _cycles;
+    /** _forward[k] is the index that index K maps to. */
+    private final int[] _forward;
 
-    /** Return the permutations array used to initialize this Permutation. */
-    private int[] permutations;
-}
+    /** _inverse[k] is the index that maps to index K. */
+    private final int[] _inverse;
 
+    /** True iff no index maps to itself. */
+    private final boolean _derangement;
+
+    /** My inverse, once computed. */
+    private volatile Permutation _inversePerm;
+
+    /** My cycles, once computed. */
+    private volatile int[][] _cycles;
+
+    /** Recent results of compose, keyed by the other permutation, or
+     *  null until compose is first called. */
+    private Map<Permutation, Permutation> _products;
+
+    /** Recent results of pow, keyed by exponent, or null until pow is
+     *  first called. */
+    private Map<Integer, Permutation> _powers;
+}
@@ -82,5 +82,73 @@ public class PermutationTest {
         perm = new Permutation(cycles3, UPPER);
         checkPerm("identity", UPPER_STRING, "ENKQAUYWJICOPBLMDXZVFTHRGS");
     }
-}
 
+    @Test
+    public void checkDerangement() {
+        perm = new Permutation(NAVALA.get("B"), UPPER);
+        assertTrue("reflector B is a derangement", perm.derangement());
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertFalse("rotor I fixes S", perm.derangement());
+        perm = new Permutation("", UPPER);
+        assertFalse("identity", perm.derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedCharacter() {
+        perm = new Permutation("(ABC) (DA)", UPPER);
+    }
+
+    @Test
+    public void checkGeneralAlphabets() {
+        Alphabet digits = new Alphabet("0123456789");
+        perm = new Permutation("(0918) (27)", digits);
+        assertEquals("dense lookup", '9', perm.permute('0'));
+        assertEquals("dense inverse", '1', perm.invert('8'));
+        assertFalse("not in alphabet", digits.contains('A'));
+
+        Alphabet sparse = new Alphabet("a\u0391\u4e00z");
+        perm = new Permutation("(a\u4e00) (\u0391z)", sparse);
+        assertEquals("sparse lookup", '\u4e00', perm.permute('a'));
+        assertEquals("sparse inverse", 'z', perm.invert('\u0391'));
+        assertEquals("index", 2, sparse.toInt('\u4e00'));
+        assertFalse("not in alphabet", sparse.contains('b'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedAlphabetCharacter() {
+        new Alphabet("ABCA");
+    }
+
+    @Test
+    public void checkAlgebra() {
+        Permutation rotor = new Permutation(NAVALA.get("I"), UPPER);
+        Permutation plug = new Permutation("(AB) (CD)", UPPER);
+        Permutation both = rotor.compose(plug);
+        for (int k = 0; k < 26; k += 1) {
+            assertEquals("compose", plug.permute(rotor.permute(k)),
+                         both.permute(k));
+            assertEquals("inverse", rotor.invert(k),
+                         rotor.inverse().permute(k));
+        }
+        assertSame("compose cached", both, rotor.compose(plug));
+        assertSame("inverse of inverse", rotor, rotor.inverse().inverse());
+
+        int[][] cycles = rotor.cycles();
+        assertEquals("cycles", 7, cycles.length);
+        assertArrayEquals("first cycle",
+                          new int[] {0, 4, 11, 19, 15, 7, 16, 23, 17, 20},
+                          cycles[0]);
+        assertEquals("order", 60, rotor.order());
+        assertEquals("cube", rotor.permute(rotor.permute(rotor.permute(5))),
+                     rotor.pow(3).permute(5));
+        assertEquals("negative power", rotor.invert(rotor.invert(9)),
+                     rotor.pow(-2).permute(9));
+        perm = rotor.pow(60);
+        checkPerm("order", UPPER_STRING, UPPER_STRING);
+        assertSame("pow cached", perm, rotor.pow(60));
+        assertFalse("power with fixed points", rotor.pow(10).derangement());
+        assertTrue("square of reflector is identity",
+                   new Permutation(NAVALA.get("B"), UPPER).pow(2)
+                   .cycles().length == 26);
+    }
+}
@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static enigma.EnigmaException.*;
+
+/** The converter used by --pipeline: one thread reads messages into
+ *  MessageJobs, several convert the jobs, each with its own machine, and
+ *  the calling thread prints the results in input order.
+ *  @author Kushal Singh
+ */
+class PipelinedConverter {
+
+    /** A converter of the messages in INPUT, printing the results on
+     *  OUTPUT, whose setting lines and machines are supplied by MAIN. */
+    PipelinedConverter(Main main, Scanner input, MessageWriter output) {
+        _main = main;
+        _input = input;
+        _output = output;
+    }
+
+    /** Convert all my messages on WORKERS threads, each with a machine
+     *  described by CONFIG.  No more than PIPELINE_WINDOW jobs are read
+     *  ahead of the last one printed. */
+    void convert(MachineConfig config, int workers) {
+        BlockingQueue<MessageJob> jobs =
+            new ArrayBlockingQueue<>(PIPELINE_WINDOW);
+        BlockingQueue<MessageJob> done =
+            new ArrayBlockingQueue<>(PIPELINE_WINDOW);
+        Semaphore window = new Semaphore(PIPELINE_WINDOW);
+
+        Thread[] threads = new Thread[workers + 1];
+        threads[0] = new Thread(() -> readJobs(jobs, window, workers));
+        for (int i = 1; i <= workers; i += 1) {
+            threads[i] = new Thread(() -> runJobs(config, jobs, done));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            HashMap<Long, MessageJob> waiting = new HashMap<>();
+            long next = 0;
+            for (int finished = 0; finished < workers; ) {
+                MessageJob job = done.take();
+                if (job == MessageJob.END) {
+                    finished += 1;
+                    continue;
+                }
+                waiting.put(job.sequence(), job);
+                for (job = waiting.remove(next); job != null;
+                     job = waiting.remove(next)) {
+                    job.write(_output);
+                    next += 1;
+                    window.release();
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /** Read the messages in _input into jobs on JOBS, waiting for a permit
+     *  from WINDOW before each, and then put END on JOBS for each of
+     *  WORKERS threads.  A job that cannot be read is the last. */
+    private void readJobs(BlockingQueue<MessageJob> jobs, Semaphore window,
+                          int workers) {
+        try {
+            try {
+                for (long seq = 0; _input.hasNextLine(); seq += 1) {
+                    window.acquire();
+                    MessageJob job = readJob(seq);
+                    jobs.put(job);
+                    if (job.setting() == null) {
+                        break;
+                    }
+                }
+            } finally {
+                for (int i = 0; i < workers; i += 1) {
+                    jobs.put(MessageJob.END);
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Return job number SEQ, read from _input as for Main.process.  If
+     *  the input is malformed, the job has no setting line, and records
+     *  the error. */
+    private MessageJob readJob(long seq) {
+        String setting = _input.nextLine();
+        boolean newLine = false;
+        if (!setting.split(" ")[0].equals("*")) {
+            if (!_input.hasNext()) {
+                MessageJob job = new MessageJob(seq, false, null);
+                job.fail(new EnigmaException(
+                    "First line must be settings line."));
+                return job;
+            }
+            setting = _input.nextLine();
+            newLine = true;
+        }
+        MessageJob job = new MessageJob(seq, newLine, setting);
+        while (!_input.hasNext("\\*.*") && _input.hasNextLine()) {
+            String msg = _input.nextLine();
+            for (int i = 0; i < msg.length(); i += 1) {
+                char c = msg.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    job.append(_main.toAlphabet(c));
+                }
+            }
+            job.endLine();
+        }
+        return job;
+    }
+
+    /** Repeatedly take a job from JOBS, set up a machine described by
+     *  CONFIG according to it, convert it, and put it on DONE, until
+     *  taking END, which is also put on DONE. */
+    private void runJobs(MachineConfig config, BlockingQueue<MessageJob> jobs,
+                         BlockingQueue<MessageJob> done) {
+        Machine M = _main.newMachine(config);
+        try {
+            while (true) {
+                MessageJob job = jobs.take();
+                if (job != MessageJob.END && job.setting() != null) {
+                    try {
+                        _main.setUp(M, job.setting());
+                        long start = System.nanoTime();
+                        job.convert(M);
+                        _metrics.converted(job.length(),
+                                           System.nanoTime() - start);
+                    } catch (RuntimeException excp) {
+                        job.fail(excp);
+                    }
+                }
+                done.put(job);
+                if (job == MessageJob.END) {
+                    return;
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Maximum number of jobs read but not yet printed. */
+    private static final int PIPELINE_WINDOW = 256;
+
+    /** Interprets setting lines and makes machines. */
+    private final Main _main;
+
+    /** Source of input messages. */
+    private final Scanner _input;
+
+    /** Destination of converted messages. */
+    private final MessageWriter _output;
+
+    /** Counts of the work done. */
+    private final EnigmaMetrics _metrics = EnigmaMetrics.global();
+
+}
@@ -56,31 +56,113 @@ class Rotor {
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting =  (int) (cposn - 'A');
+        _setting = alphabet().toInt(cposn);
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        return _permutation.permute(p + setting()) - setting();
+        if (_forwardTable != null) {
+            return _forwardTable[_setting * size() + p];
+        }
+        int e = _permutation.permute(p + _setting) - _setting;
+        return _permutation.wrap(e);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        return _permutation.invert(e + setting()) - setting();
+        if (_backwardTable != null) {
+            return _backwardTable[_setting * size() + e];
+        }
+        int p = _permutation.invert(e + _setting) - _setting;
+        return _permutation.wrap(p);
+    }
+
+    /** Return true iff my conversion tables, with size() * size() entries
+     *  each, are small enough to compile (at most MAX_TABLE entries). */
+    boolean tabled() {
+        return (long) size() * size() <= MAX_TABLE;
+    }
+
+    /** Return the table of my forward conversions, indexed by
+     *  setting * size() + input, compiling it if necessary, or null if
+     *  not tabled(). */
+    synchronized int[] forwardTable() {
+        compile();
+        return _forwardTable;
+    }
+
+    /** Return the table of my backward conversions, indexed as for
+     *  forwardTable(), compiling it if necessary, or null if not
+     *  tabled(). */
+    synchronized int[] backwardTable() {
+        compile();
+        return _backwardTable;
+    }
+
+    /** Return forwardTable() with each entry narrowed to a byte, for
+     *  rotors whose alphabets have at most 256 symbols. */
+    synchronized byte[] forwardBytes() {
+        if (_forwardBytes == null) {
+            _forwardBytes = narrow(forwardTable());
+        }
+        return _forwardBytes;
+    }
+
+    /** Return backwardTable() narrowed as for forwardBytes(). */
+    synchronized byte[] backwardBytes() {
+        if (_backwardBytes == null) {
+            _backwardBytes = narrow(backwardTable());
+        }
+        return _backwardBytes;
+    }
+
+    /** Return TABLE, whose entries must be less than 256, as bytes. */
+    static byte[] narrow(int[] table) {
+        byte[] result = new byte[table.length];
+        for (int i = 0; i < table.length; i += 1) {
+            if (table[i] > 0xff) {
+                throw error("alphabet too large for byte tables");
+            }
+            result[i] = (byte) table[i];
+        }
+        return result;
+    }
+
+    /** Precompute my conversions in both directions for every setting, so
+     *  that each later conversion is a single table access.  Called when
+     *  I am inserted into a Machine; does nothing if already done, or if
+     *  not tabled(), in which case conversions are computed from my
+     *  permutation each time. */
+    synchronized void compile() {
+        if (_forwardTable != null || !tabled()) {
+            return;
+        }
+        int n = size();
+        int[] forward = new int[n * n];
+        int[] backward = new int[n * n];
+        for (int s = 0; s < n; s += 1) {
+            for (int p = 0; p < n; p += 1) {
+                int e = _permutation.permute(p + s) - s;
+                forward[s * n + p] = _permutation.wrap(e);
+                e = _permutation.invert(p + s) - s;
+                backward[s * n + p] = _permutation.wrap(e);
+            }
+        }
+        _backwardTable = backward;
+        _forwardTable = forward;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        return false;
+        return atNotch(_setting);
     }
 
-    /** Returns integer array of ASCII representation of characters in notches
-     *  Overridden in MovingRotor. */
-    int[] getNotchesArr() {
-        return null;
+    /** Returns true iff setting POSN is at one of my notches. */
+    boolean atNotch(int posn) {
+        return false;
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
@@ -91,13 +173,28 @@ class Rotor {
         return "Rotor " + _name;
     }
 
+    /** Largest number of entries in a conversion table: enough for
+     *  alphabets of up to 1024 symbols, at 4 MB a table. */
+    static final int MAX_TABLE = 1 << 20;
+
     /** My name. */
     private final String _name;
 
     /** The permutation implemnted by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** Instance variable for setting. */
     protected int _setting;
 
+    /** Conversions by convertForward, indexed by setting * size() + input,
+     *  or null if not yet compiled. */
+    private int[] _forwardTable;
+
+    /** Conversions by convertBackward, indexed as for _forwardTable. */
+    private int[] _backwardTable;
+
+    /** _forwardTable and _backwardTable as bytes, or null if not yet
+     *  needed. */
+    private byte[] _forwardBytes, _backwardBytes;
+
 }
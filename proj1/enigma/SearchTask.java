@@ -0,0 +1,54 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+/** A fork-join task that tries a range of rotor orders and starting
+ *  positions for a SettingSearch.  Tasks covering several rotor orders
+ *  split by order, and tasks for one order split its range of starting
+ *  positions until each piece is small.
+ *  @author Kushal Singh
+ */
+class SearchTask extends RecursiveAction {
+
+    /** Ranges of starting positions no longer than this are tried
+     *  without splitting. */
+    static final long GRAIN = 1 << 12;
+
+    /** A task trying starting positions FROM .. TO-1 with each of the
+     *  rotor orders numbered LO .. HI-1 by SEARCH. */
+    SearchTask(SettingSearch search, int lo, int hi, long from, long to) {
+        _search = search;
+        _lo = lo;
+        _hi = hi;
+        _from = from;
+        _to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (_hi - _lo > 1) {
+            int mid = _lo + (_hi - _lo) / 2;
+            invokeAll(new SearchTask(_search, _lo, mid, _from, _to),
+                      new SearchTask(_search, mid, _hi, _from, _to));
+        } else if (_to - _from > GRAIN) {
+            long mid = _from + (_to - _from) / 2;
+            invokeAll(new SearchTask(_search, _lo, _hi, _from, mid),
+                      new SearchTask(_search, _lo, _hi, mid, _to));
+        } else if (_hi > _lo) {
+            _search.check(_lo, _from, _to);
+        }
+    }
+
+    /** For serialization. */
+    private static final long serialVersionUID = 1L;
+
+    /** The search I am part of. */
+    private final SettingSearch _search;
+
+    /** Bounds of the rotor orders I try. */
+    private final int _lo, _hi;
+
+    /** Bounds of the starting positions I try. */
+    private final long _from, _to;
+
+}
@@ -0,0 +1,15 @@
+package enigma;
+
+/** A search over the rotor orders and starting positions of a machine,
+ *  which a SearchTask divides among threads.  Rotor orders are numbered
+ *  from 0, and so are starting positions, with the setting of the
+ *  rightmost rotor varying fastest.
+ *  @author Kushal Singh
+ */
+interface SettingSearch {
+
+    /** Try starting positions FROM .. TO-1 with rotor order number ORDER.
+     *  May be called from several threads at once. */
+    void check(int order, long from, long to);
+
+}